@@ -18,51 +18,90 @@
 
 package com.huodian.hs4j;
 
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.ChannelGroupFuture;
 import io.netty.channel.group.ChannelGroupFutureListener;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
 import java.nio.charset.Charset;
 import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.huodian.hs4j.command.HSAuth;
 import com.huodian.hs4j.command.HSCommand;
+import com.huodian.hs4j.command.HSFind;
+import com.huodian.hs4j.command.HSModify;
 import com.huodian.hs4j.command.HSOpenIndex;
 import com.huodian.hs4j.core.HSIndexDescriptor;
 import com.huodian.hs4j.core.HSProto;
 import com.huodian.hs4j.netty.HSConnection;
 import com.huodian.hs4j.netty.HSConnection.HSConnectionMode;
+import com.huodian.hs4j.netty.HSConnection.HSTransport;
+import com.huodian.hs4j.reactive.HSRowPublisher;
+import com.huodian.hs4j.result.HSOpenIndexFuture;
 import com.huodian.hs4j.result.HSResult;
 import com.huodian.hs4j.result.HSResultFuture;
+import com.huodian.hs4j.selector.ConnectionSelector;
+import com.huodian.hs4j.selector.RoundRobinSelector;
 
 public class HSManager {
     public static final int READWRITE_PORT = 9999;
     public static final int READONLY_PORT = 9998;
     public static final long DEFAULT_CONNECT_TIMEOUT = 10000; //ms
     public static final long DEFAULT_REQUEST_TIMEOUT = 5000; //ms
+    public static final int DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES = 256; //flushes, the default of netty
+    public static final long TIMER_TICK = 10; //ms, precision of request timeouts
     
     private static final Logger LOG = LoggerFactory.getLogger(HSManager.class.getName());
     
     protected Charset charset;
-    private AtomicInteger curConnection = new AtomicInteger(0);
+    private volatile ConnectionSelector selector = new RoundRobinSelector();
     
+    /**
+     * all connections, write pool first
+     */
     protected final HSConnection[] connections;
+    /**
+     * connections to the read-only port, pure HSFind requests are executed on them
+     */
+    protected final HSConnection[] readConnections;
+    /**
+     * connections to the read-write port
+     */
+    protected final HSConnection[] writeConnections;
 
     protected final ChannelGroup channelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
     protected final EventLoopGroup workerGroup;
     
+    protected final HSTransport transport;
+    
     private long connectionTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+    /**
+     * fail requests when their deadlines come, shared by all connections
+     */
+    private final HashedWheelTimer timer = new HashedWheelTimer(TIMER_TICK, TimeUnit.MILLISECONDS);
     
+    private volatile boolean closed = false;
+    private volatile boolean writeCoalescing = false;
+    private volatile int explicitFlushAfterFlushes = DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES;
 
     public HSManager(String host, String secret) throws TimeoutException, HSException {
         this(
@@ -103,11 +142,85 @@ public class HSManager {
 	public HSManager(String host, String secret, HSConnectionMode mode, int readWritePort,
 	        int readOnlyPort, int poolSize, int threadNum,
 	        Charset charset, long connectionTimeout, long requestTimeout) throws TimeoutException, HSException {
+	    this(
+	        host, secret,
+	        readWritePort,
+	        readOnlyPort,
+	        mode == HSConnectionMode.READ_ONLY ? 0 : poolSize,
+	        mode == HSConnectionMode.READ_ONLY ? poolSize : 0,
+	        threadNum,
+	        charset,
+	        connectionTimeout,
+	        requestTimeout
+	    );
+	}
+	
+	/**
+	 * keep two pools, pure HSFind requests are executed on the read-only port,
+	 * others on the read-write port
+	 * @param host
+	 * @param secret
+	 * @param readWritePort
+	 * @param readOnlyPort
+	 * @param writePoolSize
+	 *  connections to the read-write port,
+	 *  0 means all requests are executed in the read pool
+	 * @param readPoolSize
+	 *  connections to the read-only port,
+	 *  0 means all requests are executed in the write pool
+	 * @param threadNum
+	 * @param charset
+	 * @param connectionTimeout
+	 * @param requestTimeout
+	 * @throws TimeoutException
+	 * @throws HSException
+	 */
+	public HSManager(String host, String secret, int readWritePort, int readOnlyPort,
+	        int writePoolSize, int readPoolSize, int threadNum,
+	        Charset charset, long connectionTimeout, long requestTimeout) throws TimeoutException, HSException {
+	    this(
+	        host, secret,
+	        HSTransport.NIO,
+	        readWritePort,
+	        readOnlyPort,
+	        writePoolSize,
+	        readPoolSize,
+	        threadNum,
+	        charset,
+	        connectionTimeout,
+	        requestTimeout
+	    );
+	}
+	
+	/**
+	 * @param host
+	 * @param secret
+	 * @param transport
+	 *  EPOLL falls back to NIO when the native library is not available,
+	 *  DOMAIN_SOCKET needs it, host is the path of the socket file then
+	 * @param readWritePort
+	 * @param readOnlyPort
+	 * @param writePoolSize
+	 *  connections to the read-write port,
+	 *  0 means all requests are executed in the read pool
+	 * @param readPoolSize
+	 *  connections to the read-only port,
+	 *  0 means all requests are executed in the write pool
+	 * @param threadNum
+	 * @param charset
+	 * @param connectionTimeout
+	 * @param requestTimeout
+	 * @throws TimeoutException
+	 * @throws HSException
+	 */
+	public HSManager(String host, String secret, HSTransport transport, int readWritePort, int readOnlyPort,
+	        int writePoolSize, int readPoolSize, int threadNum,
+	        Charset charset, long connectionTimeout, long requestTimeout) throws TimeoutException, HSException {
         if(host == null || host.equals("")) {
             throw new InvalidParameterException("host is invalid");
         }
         
-	    if(poolSize <= 0 || threadNum <= 0) {
+	    if(writePoolSize < 0 || readPoolSize < 0 || writePoolSize + readPoolSize <= 0 || threadNum <= 0) {
 	        throw new InvalidParameterException("poolSize and threadNum must be big than 0");
 	    }
 	    
@@ -115,32 +228,118 @@ public class HSManager {
             throw new InvalidParameterException("readWritePort and readOnlyPort must be big than 1024");
         }
         
-        HSResultFuture.setDefaultTimeout(requestTimeout);
-        
         this.charset = charset;
         this.connectionTimeout = connectionTimeout;
+        this.requestTimeout = requestTimeout;
         
-        this.connections = new HSConnection[poolSize];
+        this.connections = new HSConnection[writePoolSize + readPoolSize];
         
-        this.workerGroup = new NioEventLoopGroup(threadNum);
+        if(transport != HSTransport.NIO && !Epoll.isAvailable()) {
+            if(transport == HSTransport.DOMAIN_SOCKET) { //no way to fall back
+                throw new HSException("Native epoll is required by domain socket, reason:" + Epoll.unavailabilityCause());
+            }
+            LOG.warn("Native epoll is not available, use NIO instead, cause:{}", Epoll.unavailabilityCause());
+            transport = HSTransport.NIO;
+        }
+        this.transport = transport;
+        
+        if(transport != HSTransport.NIO) {
+            this.workerGroup = new EpollEventLoopGroup(threadNum);
+        } else {
+            this.workerGroup = new NioEventLoopGroup(threadNum);
+        }
+        
+        for(int i = 0; i < this.connections.length; i++) {
+            HSConnectionMode mode = i < writePoolSize ? HSConnectionMode.READ_WRITE : HSConnectionMode.READ_ONLY;
+            this.connections[i] = new HSConnection(host, secret, this, mode, readOnlyPort, readWritePort, charset);
+        }
         
-        for(int i = 0; i < poolSize; i++) {
-            HSConnection cp = new HSConnection(host, this, mode, readOnlyPort, readWritePort, charset);
-            this.connections[i] = cp;
+        try {
+            start(host, secret);
+        } catch(TimeoutException e) {
+            shutdown();
+            throw e;
+        } catch(HSException e) {
+            shutdown();
+            throw e;
+        }
+        
+        HSConnection[] writePool = Arrays.copyOfRange(this.connections, 0, writePoolSize);
+        HSConnection[] readPool = Arrays.copyOfRange(this.connections, writePoolSize, this.connections.length);
+        this.writeConnections = writePoolSize > 0 ? writePool : readPool;
+        this.readConnections = readPoolSize > 0 ? readPool : writePool;
+	}
+
+	/**
+	 * connect and auth all connections concurrently,
+	 * the whole pool must be ready in connectionTimeout
+	 * @param host
+	 * @param secret
+	 * @throws TimeoutException
+	 * @throws HSException
+	 */
+	private void start(String host, String secret) throws TimeoutException, HSException {
+	    int num = connections.length;
+	    long deadline = System.currentTimeMillis() + connectionTimeout;
+	    ChannelFuture[] connectFutures = new ChannelFuture[num];
+	    HSResultFuture[] authFutures = new HSResultFuture[num];
+	    
+	    for(int i = 0; i < num; i++) {
+	        connectFutures[i] = connections[i].connectAsync();
+	    }
+	    
+	    //send auth as soon as the connection is made, the others are still connecting
+	    for(int i = 0; i < num; i++) {
+	        if (!connectFutures[i].awaitUninterruptibly(remaining(deadline))) {
+	            throw new TimeoutException("Timeout to connect " + host);
+	        }
+	        
+	        if (!connectFutures[i].isSuccess()) {
+	            throw new HSException("Fail to connect " + host + ", reason:" + connectFutures[i].cause());
+	        }
+	        
+	        authFutures[i] = connections[i].execute(new HSAuth(secret));
+	    }
+	    
+	    for(int i = 0; i < num; i++) {
+            HSResult[] results = authFutures[i].get(remaining(deadline));
+            if(results[0].getCause() instanceof TimeoutException) {
+                throw new TimeoutException("Timeout to auth " + host);
+            }
             
-            HSResultFuture resultSet = cp.execute(new HSAuth(secret));
-            HSResult[] results = resultSet.get();
             HSCommand cmd = results[0].getCommand(); 
             if(cmd.getStatus() != HSProto.STATUS_OK) {
                 throw new HSException("Fail to connect " + host + ",for fail to auth, reason:" + cmd.getReason());
             }
-        }
+	    }
 	}
-
+	
+	private static long remaining(long deadline) {
+	    return Math.max(0, deadline - System.currentTimeMillis());
+	}
+	
+	/**
+	 * release all resources when it fails to start
+	 */
+	private void shutdown() {
+	    closed = true;
+	    timer.stop();
+	    channelGroup.close().awaitUninterruptibly();
+	    workerGroup.shutdownGracefully();
+	}
+	
 	public EventLoopGroup getWorkGroup() {
 	    return workerGroup;
 	}
 	
+	/**
+	 * @return
+	 *  transport in use, NIO if EPOLL is not available
+	 */
+	public HSTransport getTransport() {
+	    return transport;
+	}
+	
 	public ChannelGroup getChannelGroup() {
 	    return this.channelGroup;
 	}
@@ -150,6 +349,8 @@ public class HSManager {
 	 * @return
 	 */
 	public synchronized ChannelGroupFuture close() {
+	    closed = true; //never reconnect
+	    timer.stop(); //pending requests are failed when channels are closed
 		ChannelGroupFuture result = channelGroup.close();
 
 		result.addListener(new ChannelGroupFutureListener() {
@@ -161,6 +362,10 @@ public class HSManager {
 		return result;
 	}
 
+	public boolean isClosed() {
+	    return closed;
+	}
+	
 	public Charset getCharset() {
 		return charset;
 	}
@@ -169,47 +374,208 @@ public class HSManager {
 	    return connectionTimeout;
 	}
 	
+	/**
+	 * default timeout of requests executed by this manager
+	 * @return
+	 */
+	public long getRequestTimeout() {
+	    return requestTimeout;
+	}
+	
+	public Timer getTimer() {
+	    return timer;
+	}
+	
+	/**
+	 * coalesce flushes of concurrent callers on one connection into one,
+	 * by netty's FlushConsolidationHandler: a flush is delayed to the end of
+	 * the current read or to the next event-loop tick
+	 * @param explicitFlushAfterFlushes
+	 *  flush at once after so many flushes are delayed
+	 */
+	public void enableWriteCoalescing(int explicitFlushAfterFlushes) {
+	    if(explicitFlushAfterFlushes <= 0) {
+	        throw new InvalidParameterException("explicitFlushAfterFlushes must be big than 0");
+	    }
+	    
+	    this.explicitFlushAfterFlushes = explicitFlushAfterFlushes;
+	    this.writeCoalescing = true;
+	    setWriteCoalescing(true);
+	}
+	
+	public void enableWriteCoalescing() {
+	    enableWriteCoalescing(DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES);
+	}
+	
+	/**
+	 * flushes delayed already are done when the handler is removed
+	 */
+	public void disableWriteCoalescing() {
+	    this.writeCoalescing = false;
+	    setWriteCoalescing(false);
+	}
+	
+	private void setWriteCoalescing(boolean enabled) {
+	    for(HSConnection conn : connections) {
+	        if(conn != null) {
+	            conn.setWriteCoalescing(enabled);
+	        }
+	    }
+	}
+	
+	public boolean isWriteCoalescing() {
+	    return writeCoalescing;
+	}
+	
+	public int getExplicitFlushAfterFlushes() {
+	    return explicitFlushAfterFlushes;
+	}
+	
     public HSResultFuture execute(HSIndexDescriptor indexDescr, HSCommand command) {
         return execute(indexDescr, new HSCommand[] {command});
     }
 
     /**
-     * execute a command in all connections
+     * open an index on all connections.
+     * It is not necessary, an index is opened on a connection
+     * in the same request when it is used the first time
      * @param indexDescr
-     * @param command
-     * @param timeout
      * @return
-     *  > 0, failed
+     *  > 0, failed, sequence number(from 1) of the first failed connection
      *  == 0, all succeeded 
      */
     public int openIndex(HSIndexDescriptor indexDescr) {
-        int sn = 0;
+        Map<Integer, List<HSResult>> failures = openIndexes(indexDescr).getFailures(requestTimeout);
+        if(failures.isEmpty()) {
+            return HSProto.STATUS_OK;
+        }
         
-        for(HSConnection conn : connections) {
-            sn++;
-            HSResultFuture resultSet = conn.execute(indexDescr, new HSOpenIndex());
-            HSResult[] results = resultSet.get();
-            HSCommand cmd = results[0].getCommand(); 
-            if(cmd.getStatus() != HSProto.STATUS_OK) {
-                LOG.info("Fail to open index:{}, reason:{}", indexDescr.toString(), cmd.getReason());
-                return sn;
+        Map.Entry<Integer, List<HSResult>> first = failures.entrySet().iterator().next();
+        HSResult res = first.getValue().get(0);
+        LOG.info("Fail to open index:{}, reason:{}", indexDescr.toString(),
+                res.getCause() != null ? res.getCause().toString() : res.getCommand().getReason());
+        return first.getKey() + 1;
+    }
+    
+    /**
+     * open indexes on all connections without waiting,
+     * all HSOpenIndex are pipelined in one request on every connection
+     * @param indexDescrs
+     * @return
+     *  combined future, failures of every connection can be got from it
+     */
+    public HSOpenIndexFuture openIndexes(HSIndexDescriptor... indexDescrs) {
+        int num = indexDescrs.length;
+        if(num == 0) {
+            throw new InvalidParameterException("indexDescrs can't be empty");
+        }
+        HSResultFuture[] futures = new HSResultFuture[connections.length];
+        
+        for(int i = 0; i < connections.length; i++) {
+            HSCommand[] cmds = new HSCommand[num];
+            for(int j = 0; j < num; j++) {
+                cmds[j] = new HSOpenIndex();
             }
+            futures[i] = connections[i].execute(indexDescrs, cmds);
         }
         
-        return HSProto.STATUS_OK;
+        return new HSOpenIndexFuture(futures);
     }
 
     /**
      * select one connection to execute commands
      * @param indexDescr
-     *  index opened with command HSOpenIndex
+     *  index opened with command HSOpenIndex, or opened in the same request
      * @param commands
-     *  command list, if HSFind, can't be more than one
+     *  command list, if HSFind, can't be more than one.
+     *  executed in the read pool if all are HSFind, or in the write pool
      * @return
      *  result future
      */
     public HSResultFuture execute(HSIndexDescriptor indexDescr, HSCommand[] commands) {
-        int cur = curConnection.incrementAndGet() % connections.length;
-        return connections[cur].execute(indexDescr, commands);
+        return execute(indexDescr, commands, requestTimeout);
+    }
+    
+    /**
+     * @param indexDescr
+     * @param commands
+     * @param timeout
+     *  milli-seconds, the request fails when it expires, even if nobody waits for it,
+     *  and it is never written if it expires before, <= 0 means no deadline
+     * @return
+     */
+    public HSResultFuture execute(HSIndexDescriptor indexDescr, HSCommand[] commands, long timeout) {
+        HSConnection[] pool = isReadOnly(commands) ? readConnections : writeConnections;
+        return selector.select(pool).execute(indexDescr, commands, timeout);
+    }
+    
+    /**
+     * rows of finds, executed as the subscriber requests rows,
+     * every HSFind in a request of its own.
+     * The subscriber is called in the event loop or in the thread calling request,
+     * it must not block
+     * @param indexDescr
+     * @param finds
+     * @return
+     */
+    public HSRowPublisher publish(HSIndexDescriptor indexDescr, HSFind... finds) {
+        return publish(indexDescr, null, finds);
+    }
+    
+    /**
+     * @param indexDescr
+     * @param executor
+     *  decode responses in it
+     * @param finds
+     * @return
+     */
+    public HSRowPublisher publish(HSIndexDescriptor indexDescr, Executor executor, HSFind... finds) {
+        return new HSRowPublisher(this, indexDescr, finds, executor);
+    }
+    
+    /**
+     * @param indexDescr
+     * @param executor
+     *  decode responses in it
+     * @param maxInFlight
+     *  finds sent but not answered at most
+     * @param finds
+     * @return
+     */
+    public HSRowPublisher publish(HSIndexDescriptor indexDescr, Executor executor, int maxInFlight, HSFind... finds) {
+        return new HSRowPublisher(this, indexDescr, finds, executor, maxInFlight);
+    }
+    
+    /**
+     * HSModify(update/delete/increment/decrement) extends HSFind,
+     * but it can only be executed on the read-write port
+     * @param commands
+     * @return
+     *  true if all of commands are pure HSFind
+     */
+    private static boolean isReadOnly(HSCommand[] commands) {
+        for(HSCommand cmd : commands) {
+            if(!(cmd instanceof HSFind) || cmd instanceof HSModify) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public ConnectionSelector getConnectionSelector() {
+        return selector;
+    }
+    
+    /**
+     * change the way to select connections, RoundRobinSelector by default.
+     * LeastInFlightSelector or TwoChoicesSelector is better
+     * when big scans and point lookups are mixed
+     * @param selector
+     */
+    public void setConnectionSelector(ConnectionSelector selector) {
+        if(selector == null) {
+            throw new InvalidParameterException("selector can't be null");
+        }
+        this.selector = selector;
     }
 }
\ No newline at end of file
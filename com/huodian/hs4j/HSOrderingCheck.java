@@ -0,0 +1,176 @@
+package com.huodian.hs4j;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.util.ReferenceCountUtil;
+
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.huodian.hs4j.command.*;
+import com.huodian.hs4j.core.HSIndexDescriptor;
+import com.huodian.hs4j.netty.HSConnection.HSTransport;
+import com.huodian.hs4j.result.HSResult;
+import com.huodian.hs4j.result.HSResultFuture;
+
+/**
+ * Check that every response is matched to its own request,
+ * when many threads share a few connections.
+ * The mock server answers a find with the key it was asked for,
+ * so a response given to another request is found at once.
+ */
+public class HSOrderingCheck {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private static int N = 20000;
+	private static int THREAD_NUM = 32;
+	private static int POOLSIZE = 2;
+	private static int LOOP = 10;
+	private static int PORT = 19998;
+
+	public static void main(String[] args) throws Exception {
+		//threadNum, poolSize, count, loop
+		if(args.length > 0) {
+			THREAD_NUM = Integer.valueOf(args[0]);
+		}
+
+		if(args.length > 1) {
+			POOLSIZE = Integer.valueOf(args[1]);
+		}
+
+		if(args.length > 2) {
+			N = Integer.valueOf(args[2]);
+		}
+
+		if(args.length > 3) {
+			LOOP = Integer.valueOf(args[3]);
+		}
+
+		EventLoopGroup serverGroup = new NioEventLoopGroup(1);
+		long wrong;
+		try {
+			Channel server = startMockServer(serverGroup, PORT);
+			wrong = run();
+			server.close().awaitUninterruptibly();
+		} finally {
+			serverGroup.shutdownGracefully();
+		}
+
+		if(wrong > 0) {
+			System.out.println("FAIL, " + wrong + " responses mismatched");
+			System.exit(1);
+		}
+		System.out.println("OK, " + (long)N * LOOP * THREAD_NUM + " responses checked");
+		System.exit(0);
+	}
+
+	private static long run() throws Exception {
+		final HSManager hsm = new HSManager("127.0.0.1", "check", HSTransport.NIO,
+				PORT, PORT, POOLSIZE, 0, Runtime.getRuntime().availableProcessors(),
+				CHARSET, HSManager.DEFAULT_CONNECT_TIMEOUT, HSManager.DEFAULT_REQUEST_TIMEOUT);
+
+		final HSIndexDescriptor indexDescr = new HSIndexDescriptor("test", "t_check", "PRIMARY", new String[]{"id"});
+		final CountDownLatch counter = new CountDownLatch(THREAD_NUM);
+		final AtomicLong wrong = new AtomicLong(0);
+		ExecutorService exectors = Executors.newFixedThreadPool(THREAD_NUM);
+
+		for(int t = 0; t < THREAD_NUM; t++) {
+			final int thread = t;
+			exectors.execute(new Runnable() {
+				public void run() {
+					HSCommand[] cmds = new HSCommand[LOOP];
+					String[] keys = new String[LOOP];
+					HSResultFuture resultFuture;
+					HSResult[] results;
+					ResultSet rs;
+
+					for(int i = 0; i < N; i++) {
+						for(int j = 0; j < LOOP; j++) {
+							keys[j] = thread + "-" + i + "-" + j;
+							cmds[j] = new HSFind(CompareOperator.EQ, new String[]{keys[j]});
+						}
+
+						try {
+							resultFuture = hsm.execute(indexDescr, cmds);
+							results = resultFuture.get();
+							for(int j = 0; j < LOOP; j++) {
+								rs = ((HSFind)results[j].getCommand()).getResult();
+								if(rs == null || !rs.next() || !keys[j].equals(rs.getString(1))) {
+									wrong.incrementAndGet();
+								}
+							}
+						} catch(Exception e) {
+							e.printStackTrace();
+							wrong.addAndGet(LOOP);
+						}
+					}
+					counter.countDown();
+				}
+			});
+		}
+
+		counter.await();
+		exectors.shutdown();
+		hsm.close();
+
+		return wrong.get();
+	}
+
+	private static Channel startMockServer(EventLoopGroup group, int port) {
+		ServerBootstrap bootstrap = new ServerBootstrap();
+		bootstrap.group(group, group);
+		bootstrap.channel(NioServerSocketChannel.class);
+		bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
+			@Override
+			public void initChannel(SocketChannel ch) throws Exception {
+				ch.pipeline().addLast("lines", new LineBasedFrameDecoder(65536));
+				ch.pipeline().addLast("mock", new MockHandler());
+			}
+		});
+
+		return bootstrap.bind(port).syncUninterruptibly().channel();
+	}
+
+	/**
+	 * "0\t1\n" to auth and open index, "0\t1\tkey\n" to a find,
+	 * the key is the first value of the find
+	 */
+	private static class MockHandler extends ChannelInboundHandlerAdapter {
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) {
+			String line;
+			try {
+				line = ((ByteBuf)msg).toString(CHARSET);
+			} finally {
+				ReferenceCountUtil.release(msg);
+			}
+
+			String[] tokens = line.split("\t");
+			String reply;
+			if(tokens[0].equals("A") || tokens[0].equals("P") || tokens.length < 4) {
+				reply = "0\t1\n";
+			} else {
+				reply = "0\t1\t" + tokens[3] + "\n"; //indexId, op, count, key
+			}
+			ctx.write(ctx.alloc().buffer().writeBytes(reply.getBytes(CHARSET)));
+		}
+
+		@Override
+		public void channelReadComplete(ChannelHandlerContext ctx) {
+			ctx.flush();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.huodian.hs4j;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.huodian.hs4j.command.*;
+import com.huodian.hs4j.core.HSIndexDescriptor;
+import com.huodian.hs4j.netty.HSConnection.HSTransport;
+import com.huodian.hs4j.result.HSResultFuture;
+
+/**
+ * Compare NIO and native epoll transport against a local mock server,
+ * the mock server answers "0\t1\n" to every request line,
+ * so only the client side and the loopback are measured.
+ */
+public class HSTransportBenchMark {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	private static final byte[] REPLY = "0\t1\n".getBytes(CHARSET);
+
+	private static int N = 20000;
+	private static int THREAD_NUM = 4;
+	private static int POOLSIZE = 8;
+	private static int LOOP = 10;
+	private static int PORT = 19999;
+
+	public static void main(String[] args) throws Exception {
+		//threadNum, poolSize, count, loop
+		if(args.length > 0) {
+			THREAD_NUM = Integer.valueOf(args[0]);
+		}
+
+		if(args.length > 1) {
+			POOLSIZE = Integer.valueOf(args[1]);
+		}
+
+		if(args.length > 2) {
+			N = Integer.valueOf(args[2]);
+		}
+
+		if(args.length > 3) {
+			LOOP = Integer.valueOf(args[3]);
+		}
+
+		EventLoopGroup serverGroup = new NioEventLoopGroup(1);
+		try {
+			Channel server = startMockServer(serverGroup, PORT);
+
+			System.out.println("NIO   speed = " + run(HSTransport.NIO));
+			System.out.println("EPOLL speed = " + run(HSTransport.EPOLL));
+
+			server.close().awaitUninterruptibly();
+		} finally {
+			serverGroup.shutdownGracefully();
+		}
+		System.exit(0);
+	}
+
+	private static long run(HSTransport transport) throws Exception {
+		final HSManager hsm = new HSManager("127.0.0.1", "bench", transport,
+				PORT, PORT, POOLSIZE, 0, Runtime.getRuntime().availableProcessors(),
+				CHARSET, HSManager.DEFAULT_CONNECT_TIMEOUT, HSManager.DEFAULT_REQUEST_TIMEOUT);
+		if(hsm.getTransport() != transport) {
+			System.out.println(transport + " is not available, use " + hsm.getTransport());
+		}
+
+		final HSIndexDescriptor indexDescr = new HSIndexDescriptor("test", "t_bench", "PRIMARY", new String[]{"id", "name"});
+		final CountDownLatch counter = new CountDownLatch(THREAD_NUM);
+		ExecutorService exectors = Executors.newFixedThreadPool(THREAD_NUM);
+
+		long t0 = System.currentTimeMillis();
+		for(int i = 0; i < THREAD_NUM; i++) {
+			exectors.execute(new Runnable() {
+				public void run() {
+					HSCommand[] cmds = new HSCommand[LOOP];
+					HSResultFuture resultFuture;
+
+					for(int i = 0; i < N; i++) {
+						for(int j = 0; j < LOOP; j++) {
+							cmds[j] = new HSFind(CompareOperator.EQ, new String[]{Integer.toString(i * LOOP + j)});
+						}
+
+						try {
+							resultFuture = hsm.execute(indexDescr, cmds);
+							resultFuture.get();
+						} catch(Exception e) {
+							e.printStackTrace();
+						}
+					}
+					counter.countDown();
+				}
+			});
+		}
+
+		counter.await();
+		long t = System.currentTimeMillis() - t0;
+
+		exectors.shutdown();
+		hsm.close();
+
+		return 1000L * N * LOOP * THREAD_NUM / Math.max(t, 1);
+	}
+
+	private static Channel startMockServer(EventLoopGroup group, int port) {
+		ServerBootstrap bootstrap = new ServerBootstrap();
+		bootstrap.group(group, group);
+		bootstrap.channel(NioServerSocketChannel.class);
+		bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
+			@Override
+			public void initChannel(SocketChannel ch) throws Exception {
+				ch.pipeline().addLast("mock", new MockHandler());
+			}
+		});
+
+		return bootstrap.bind(port).syncUninterruptibly().channel();
+	}
+
+	/**
+	 * One reply for every '\n', requests are never parsed
+	 */
+	private static class MockHandler extends ChannelInboundHandlerAdapter {
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) {
+			ByteBuf in = (ByteBuf)msg;
+			int lines = 0;
+			int idx;
+
+			try {
+				while((idx = in.bytesBefore((byte)'\n')) >= 0) {
+					in.skipBytes(idx + 1);
+					lines++;
+				}
+				in.skipBytes(in.readableBytes()); //a partial line is answered with its '\n'
+			} finally {
+				ReferenceCountUtil.release(msg);
+			}
+
+			if(lines > 0) {
+				ByteBuf out = ctx.alloc().buffer(lines * REPLY.length);
+				for(int i = 0; i < lines; i++) {
+					out.writeBytes(REPLY);
+				}
+				ctx.writeAndFlush(out);
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.huodian.hs4j;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.huodian.hs4j.core.HSProto;
+import com.huodian.hs4j.core.ResultData;
+import com.huodian.hs4j.core.SafeByteStream;
+
+/**
+ * Decode response bodies by ResultData and check every cell
+ * against a plain byte by byte split, with NULLs, escaped bytes
+ * and incomplete last rows, in results of up to a few hundred cells,
+ * so the NULL bitmap spans more than one word
+ */
+public class ResultDataCheck {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	private static final byte[] ALPHABET = {'\t', '\t', 0x00, 0x01, 0x02, 0x0f, 'a', 'Z', '0', (byte)0xC3};
+
+	private static int LOOP = 100000;
+
+	public static void main(String[] args) throws Exception {
+		if(args.length > 0) {
+			LOOP = Integer.valueOf(args[0]);
+		}
+
+		//a NULL first, then more than 64 cells without NULL
+		StringBuilder body = new StringBuilder("\u0000");
+		for(int i = 1; i < 200; i++) {
+			body.append('\t').append(i);
+		}
+		check(body.toString().getBytes(CHARSET), 2);
+
+		Random random = new Random(17);
+		for(int t = 0; t < LOOP; t++) {
+			int len = 1 + random.nextInt(t % 10 == 0 ? 2000 : 100);
+			byte[] b = new byte[len];
+			for(int i = 0; i < len; i++) {
+				b[i] = random.nextInt(3) == 0 ? ALPHABET[random.nextInt(ALPHABET.length)]
+						: (byte)(0x20 + random.nextInt(90));
+			}
+			check(b, 1 + random.nextInt(5));
+		}
+
+		System.out.println("OK, " + (LOOP + 1) + " bodies checked");
+	}
+
+	private static void check(byte[] body, int columnNum) {
+		List<byte[]> cells = split(body);
+		int rowNum = (cells.size() + columnNum - 1) / columnNum;
+
+		SafeByteStream input = new SafeByteStream(body.length, 1024, CHARSET);
+		input.writeBytes(body, false);
+		ResultData data = ResultData.decode(input, 0, body.length, columnNum);
+
+		if(data.getRowCount() != rowNum) {
+			throw new IllegalStateException("rows " + data.getRowCount() + " != " + rowNum + " of " + Arrays.toString(body));
+		}
+
+		for(int row = 0; row < rowNum; row++) {
+			for(int col = 0; col < columnNum; col++) {
+				int cell = row * columnNum + col;
+				byte[] expected = cell < cells.size() ? cells.get(cell) : null; //missing cells are NULL
+				if(!Arrays.equals(expected, data.getBytes(row, col)) || (expected == null) != data.isNull(row, col)) {
+					throw new IllegalStateException("cell " + row + "," + col + " of " + Arrays.toString(body));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param body
+	 * @return
+	 *  unescaped cells, null for NULL
+	 */
+	private static List<byte[]> split(byte[] body) {
+		List<byte[]> cells = new ArrayList<byte[]>();
+		byte[] cell = new byte[body.length];
+		int n = 0;
+		int raw = 0;
+		boolean shift = false;
+
+		for(int i = 0; i <= body.length; i++) {
+			byte b = i < body.length ? body[i] : HSProto.TOKEN_DELIMITER;
+			if(b == HSProto.TOKEN_DELIMITER || b == HSProto.PACKET_DELIMITER) {
+				cells.add(raw == 1 && n == 1 && cell[0] == HSProto.NULL_BYTE ? null : Arrays.copyOf(cell, n));
+				n = 0;
+				raw = 0;
+				shift = false;
+				continue;
+			}
+
+			raw++;
+			if(b == HSProto.UNSAFE_BYTE_MARKER) {
+				shift = true;
+			} else {
+				cell[n++] = shift ? (byte)(b & ~HSProto.UNSAFE_BYTE_MASK) : b;
+				shift = false;
+			}
+		}
+		return cells;
+	}
+}
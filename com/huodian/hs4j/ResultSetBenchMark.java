@@ -0,0 +1,68 @@
+package com.huodian.hs4j;
+
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+
+import com.huodian.hs4j.core.ResultData;
+import com.huodian.hs4j.core.ResultSetImpl;
+import com.huodian.hs4j.core.SafeByteStream;
+
+/**
+ * Speed of the numeric getters of ResultSetImpl,
+ * no server is needed, rows are decoded from a built response body
+ */
+public class ResultSetBenchMark {
+	private static int ROWS = 1000;
+	private static int LOOP = 20000;
+
+	public static void main(String[] args) throws Exception {
+		//rows, loop
+		if(args.length > 0) {
+			ROWS = Integer.valueOf(args[0]);
+		}
+
+		if(args.length > 1) {
+			LOOP = Integer.valueOf(args[1]);
+		}
+
+		Charset charset = Charset.forName("UTF-8");
+		StringBuilder body = new StringBuilder();
+		for(int i = 0; i < ROWS; i++) {
+			if(i > 0) {
+				body.append('\t');
+			}
+			body.append(i * 7919).append('\t').append(1234567890123L + i).append('\t').append(i).append(".25");
+		}
+
+		byte[] bytes = body.toString().getBytes(charset);
+		SafeByteStream input = new SafeByteStream(bytes.length, 1024, charset);
+		input.writeBytes(bytes, false);
+		ResultSetImpl resultSet = new ResultSetImpl(ResultData.decode(input, 0, bytes.length, 3),
+				new String[]{"id", "counter", "price"}, charset);
+
+		long sum = 0;
+		for(int i = 0; i < LOOP / 10; i++) { //warm up
+			sum += run(resultSet);
+		}
+
+		long t0 = System.currentTimeMillis();
+		for(int i = 0; i < LOOP; i++) {
+			sum += run(resultSet);
+		}
+		long t = System.currentTimeMillis() - t0;
+
+		System.out.println("Speed = " + (1000L * ROWS * LOOP / Math.max(t, 1)) + " rows/s, checksum " + sum);
+	}
+
+	private static long run(ResultSetImpl resultSet) throws SQLException {
+		long sum = 0;
+
+		resultSet.beforeFirst();
+		while(resultSet.next()) {
+			sum += resultSet.getInt(1);
+			sum += resultSet.getLong(2);
+			sum += (long)resultSet.getDouble(3);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,86 @@
+package com.huodian.hs4j;
+
+import java.nio.charset.Charset;
+
+import com.huodian.hs4j.core.SafeByteStream;
+
+/**
+ * Write speed of SafeByteStream, including its growth:
+ * every round starts from a small stream, as HSResult does,
+ * and appends chunks until the response size is reached
+ */
+public class SafeByteStreamBenchMark {
+	private static int SIZE = 1 << 20;
+	private static int CHUNK = 1460;
+	private static int LOOP = 2000;
+
+	public static void main(String[] args) throws Exception {
+		//size, chunk, loop
+		if(args.length > 0) {
+			SIZE = Integer.valueOf(args[0]);
+		}
+
+		if(args.length > 1) {
+			CHUNK = Integer.valueOf(args[1]);
+		}
+
+		if(args.length > 2) {
+			LOOP = Integer.valueOf(args[2]);
+		}
+
+		Charset charset = Charset.forName("UTF-8");
+		byte[] chunk = new byte[CHUNK];
+		for(int i = 0; i < CHUNK; i++) {
+			chunk[i] = (byte)(i % 10 == 9 ? '\t' : 'a' + i % 26); //a control byte in every 10
+		}
+
+		long sum = 0;
+		for(int i = 0; i < LOOP / 10; i++) { //warm up
+			sum += run(chunk, charset, false) + run(chunk, charset, true) + runBytes(charset);
+		}
+
+		long t0 = System.currentTimeMillis();
+		for(int i = 0; i < LOOP; i++) {
+			sum += run(chunk, charset, false);
+		}
+		long t1 = System.currentTimeMillis();
+		for(int i = 0; i < LOOP; i++) {
+			sum += run(chunk, charset, true);
+		}
+		long t2 = System.currentTimeMillis();
+		for(int i = 0; i < LOOP / 10; i++) {
+			sum += runBytes(charset);
+		}
+		long t3 = System.currentTimeMillis();
+
+		System.out.println("writeBytes       = " + speed(LOOP, t1 - t0) + " MB/s");
+		System.out.println("writeBytes(safe) = " + speed(LOOP, t2 - t1) + " MB/s");
+		System.out.println("writeByte        = " + speed(LOOP / 10, t3 - t2) + " MB/s, checksum " + sum);
+	}
+
+	private static long speed(long loop, long t) {
+		return loop * SIZE * 1000L / Math.max(t, 1) / (1 << 20);
+	}
+
+	private static long run(byte[] chunk, Charset charset, boolean safe) {
+		SafeByteStream stream = new SafeByteStream(64, 1024, charset);
+		int left = SIZE;
+		int len;
+
+		while(left > 0) {
+			len = Math.min(left, chunk.length);
+			stream.writeBytes(chunk, 0, len, safe);
+			left -= len;
+		}
+		return stream.getLength();
+	}
+
+	private static long runBytes(Charset charset) {
+		SafeByteStream stream = new SafeByteStream(64, 1024, charset);
+
+		for(int i = 0; i < SIZE; i++) {
+			stream.writeByte((byte)i);
+		}
+		return stream.getLength();
+	}
+}
@@ -0,0 +1,111 @@
+package com.huodian.hs4j;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.huodian.hs4j.core.HSProto;
+import com.huodian.hs4j.core.SafeByteWriter;
+
+/**
+ * Round trip strings through SafeByteWriter.writeString,
+ * the bytes must be the same as String.getBytes and escaping,
+ * and must decode back to the string when the charset can map it
+ */
+public class SafeByteWriterCheck {
+	private static final String[] CHARSETS = {"US-ASCII", "ISO-8859-1", "UTF-8", "UTF-16LE"};
+
+	public static void main(String[] args) throws Exception {
+		StringBuilder longStr = new StringBuilder();
+		while(longStr.length() < 8191) {
+			longStr.append("abc\t\u00e9\u4e2d");
+		}
+		longStr.setLength(8191);
+		longStr.append("\ud83d\ude00"); //a pair across the chunk boundary
+		for(int i = 0; i < 20000; i++) {
+			longStr.append((char)(i % 0x3000 + 1));
+		}
+
+		String[] strs = {
+			"",
+			"plain ascii value",
+			"ctrl\u0000\u0001\t\n\u000f\u0010",
+			"latin \u00e9\u00ff\u0080",
+			"multi \u0100\u07ff\u0800\u4e2d\uffff",
+			"pair \ud83d\ude00 \ud800\udfff",
+			"lone \ud800 x \udfff",
+			longStr.toString()
+		};
+
+		int checked = 0;
+		for(String name : CHARSETS) {
+			Charset charset = Charset.forName(name);
+			SafeByteWriter writer = new SafeByteWriter(charset); //one writer, so scratch is reused and grows
+
+			for(String str : strs) {
+				for(boolean safe : new boolean[]{true, false}) {
+					check(writer, charset, str, safe);
+					checked++;
+				}
+			}
+		}
+
+		System.out.println("OK, " + checked + " strings checked");
+	}
+
+	private static void check(SafeByteWriter writer, Charset charset, String str, boolean safe) {
+		ByteBuf out = Unpooled.buffer();
+		writer.wrap(out).writeString(str, safe);
+
+		byte[] actual = new byte[out.readableBytes()];
+		out.readBytes(actual);
+		out.release();
+
+		byte[] raw = str.getBytes(charset);
+		byte[] expected = safe ? escape(raw) : raw;
+		if(!Arrays.equals(expected, actual)) {
+			throw new IllegalStateException(charset + (safe ? " safe" : "") + " mismatch at: " + abbr(str));
+		}
+
+		if(safe && charset.newEncoder().canEncode(str)
+				&& !str.equals(new String(unescape(actual), charset))) {
+			throw new IllegalStateException(charset + " round trip failed at: " + abbr(str));
+		}
+	}
+
+	private static byte[] escape(byte[] b) {
+		ByteBuf out = Unpooled.buffer();
+		for(byte c : b) {
+			if((c & 0xFF) < 0x10) {
+				out.writeByte(HSProto.UNSAFE_BYTE_MARKER);
+				out.writeByte(c ^ HSProto.UNSAFE_BYTE_MASK);
+			} else {
+				out.writeByte(c);
+			}
+		}
+
+		byte[] r = new byte[out.readableBytes()];
+		out.readBytes(r);
+		out.release();
+		return r;
+	}
+
+	private static byte[] unescape(byte[] b) {
+		byte[] r = new byte[b.length];
+		int n = 0;
+		for(int i = 0; i < b.length; i++) {
+			if(b[i] == HSProto.UNSAFE_BYTE_MARKER) {
+				r[n++] = (byte)(b[++i] & ~HSProto.UNSAFE_BYTE_MASK);
+			} else {
+				r[n++] = b[i];
+			}
+		}
+		return Arrays.copyOf(r, n);
+	}
+
+	private static String abbr(String str) {
+		return str.length() > 40 ? str.substring(0, 40) + "...(" + str.length() + ")" : str;
+	}
+}
@@ -19,7 +19,7 @@ package com.huodian.hs4j.command;
 
 import com.huodian.hs4j.core.HSIndexDescriptor;
 import com.huodian.hs4j.core.HSProto;
-import com.huodian.hs4j.core.SafeByteStream;
+import com.huodian.hs4j.core.SafeByteWriter;
 
 public class HSAuth extends HSCommand {
 	private final String secret;
@@ -30,13 +30,13 @@ public class HSAuth extends HSCommand {
 	}
 
     @Override
-    public void encode(final HSIndexDescriptor indexDescr, final SafeByteStream output) {
+    public void encode(final HSIndexDescriptor indexDescr, final String indexId, final SafeByteWriter output) {
         //indexdescriptor is not needed
         encode(output);
     }
 	
 	@Override
-	public void encode(final SafeByteStream output) {
+	public void encode(final SafeByteWriter output) {
 		output.writeByte(HSProto.OPERATOR_AUTH);
 		output.writeByte(HSProto.TOKEN_DELIMITER);
 		output.writeByte(this.type);
@@ -23,16 +23,32 @@ import java.security.InvalidParameterException;
 import com.huodian.hs4j.core.HSIndexDescriptor;
 import com.huodian.hs4j.core.HSProto;
 import com.huodian.hs4j.core.SafeByteStream;
+import com.huodian.hs4j.core.SafeByteWriter;
 
 abstract public class HSCommand {
 	protected HSIndexDescriptor indexDescr;
+	/**
+	 * id of the index written in the request
+	 */
+	protected String indexId;
+
+	public void encode(final HSIndexDescriptor indexDescr, final SafeByteWriter output) {
+		encode(indexDescr, indexDescr == null ? null : indexDescr.getIndexId(), output);
+	}
 
-	public void encode(final HSIndexDescriptor indexDescr, final SafeByteStream output) {
-		if (null == indexDescr) {
-			throw new InvalidParameterException("indexDescr can't be null");
+	/**
+	 * @param indexDescr
+	 * @param indexId
+	 *  id the index is opened with on the connection
+	 * @param output
+	 */
+	public void encode(final HSIndexDescriptor indexDescr, final String indexId, final SafeByteWriter output) {
+		if (null == indexDescr || null == indexId) {
+			throw new InvalidParameterException("indexDescr and indexId can't be null");
 		}
 
 		this.indexDescr = indexDescr;
+		this.indexId = indexId;
 
 		encode(output);
 	}
@@ -53,7 +69,7 @@ abstract public class HSCommand {
         return columnNum;
     }
     
-	abstract protected void encode(final SafeByteStream output);
+	abstract protected void encode(final SafeByteWriter output);
     
 	/**
      * decode response body
@@ -18,7 +18,7 @@
 package com.huodian.hs4j.command;
 
 import com.huodian.hs4j.core.HSProto;
-import com.huodian.hs4j.core.SafeByteStream;
+import com.huodian.hs4j.core.SafeByteWriter;
 
 public class HSDelete extends HSModify {
 	public HSDelete() {
@@ -30,7 +30,7 @@ public class HSDelete extends HSModify {
 	}
 
     @Override
-    protected void modify(SafeByteStream output) {
+    protected void modify(SafeByteWriter output) {
         output.writeByte(HSProto.TOKEN_DELIMITER);
         output.writeByte(modOperator);
         //no values
@@ -26,8 +26,10 @@ import java.util.List;
 import com.huodian.hs4j.core.FilterType;
 import com.huodian.hs4j.core.HSIndexDescriptor;
 import com.huodian.hs4j.core.HSProto;
+import com.huodian.hs4j.core.ResultData;
 import com.huodian.hs4j.core.ResultSetImpl;
 import com.huodian.hs4j.core.SafeByteStream;
+import com.huodian.hs4j.core.SafeByteWriter;
 
 public class HSFind extends HSCommand {
 	protected CompareOperator operator = null;
@@ -60,8 +62,8 @@ public class HSFind extends HSCommand {
 	}
 
 	@Override
-	protected void encode(final SafeByteStream output) {
-		output.writeString(indexDescr.getIndexId(), false);
+	protected void encode(final SafeByteWriter output) {
+		output.writeString(indexId, false);
 		output.writeByte(HSProto.TOKEN_DELIMITER);
 
 		output.writeBytes(operator.getValue(), false);
@@ -104,7 +106,7 @@ public class HSFind extends HSCommand {
 		output.writeByte(HSProto.PACKET_DELIMITER, false);
 	}
 
-	protected void modify(SafeByteStream output) {
+	protected void modify(SafeByteWriter output) {
 		// nothing, override in modify operations
 	}
 	
@@ -187,23 +189,29 @@ public class HSFind extends HSCommand {
 			this.column = column;
 		}
 
-		public void encode(SafeByteStream output) {
-			validate();
+		public void encode(SafeByteWriter output) {
+			int pos = validate();
 
 			output.writeByte(HSProto.TOKEN_DELIMITER);
 			output.writeByte(type.getValue());
 			output.writeByte(HSProto.TOKEN_DELIMITER);
 			output.writeBytes(operator.getValue(), false);
 			output.writeByte(HSProto.TOKEN_DELIMITER);
-			output.writeString(String.valueOf(indexDescr.getFilterColumnPos(column)), false);
+			output.writeString(String.valueOf(pos), false);
 			output.writeByte(HSProto.TOKEN_DELIMITER);
 			output.writeString(value, true);
 		}
 
-		private void validate() {
-			if (value == null || operator == null || type == null || !indexDescr.hasFilterColumn(column)) {
+		/**
+		 * @return
+		 *  position of the column in filter columns
+		 */
+		private int validate() {
+			int pos = (column == null) ? -1 : indexDescr.getFilterColumnPos(column);
+			if (value == null || operator == null || type == null || pos < 0) {
 				throw new IllegalArgumentException("invalid filter");
 			}
+			return pos;
 		}
 	}
 
@@ -213,60 +221,9 @@ public class HSFind extends HSCommand {
             return true;
         }
         
-        HSIndexDescriptor idxDesc = getIndexDescriptor(); 
-        String[] cols = idxDesc.getColumns();
-        int colNum = cols.length;
-        List<List<byte[]>> rows = new ArrayList<List<byte[]>>(getColumnNum() / colNum);
-        List<byte[]> oneRow = new ArrayList<byte[]>(colNum);
-        
-        int currentCols = 0;
-        int colBytesSize = 0;
-        int pos = start;
-        int preIdx = start;
-        byte one;
-        
-        while(pos < end) {
-            one = input.getByte(pos++);
-            
-            if (one == HSProto.TOKEN_DELIMITER || one == HSProto.PACKET_DELIMITER) {
-                /**
-                 * Patched by sam.tingleff
-                 * "A character in the range [0x00 - 0x0f] is prefixed by 0x01 and shifted by 0x40"
-                 */
-                byte[] colData = new byte[colBytesSize];
-                boolean shift = false;
-                int colDataIndex = 0;
-                int segEnd = pos - 1;
-                byte b;
-                
-                for (int i = preIdx; i < segEnd; i++) {
-                    b = input.getByte(i);
-                    if (b == HSProto.UNSAFE_BYTE_MARKER) {
-                        shift = true;
-                        continue;
-                    }
-                    colData[colDataIndex++] = (shift) ? (byte) (b & ~HSProto.UNSAFE_BYTE_MASK) : b;
-                    shift = false;
-                }
-                
-                oneRow.add(colData);
-                colBytesSize = 0; // colBytesSize must reset to zero
-                currentCols++;
-                if (currentCols == colNum) {
-                    currentCols = 0;
-                    rows.add(oneRow);
-                    oneRow = new ArrayList<byte[]>(colNum);
-                }
-                preIdx = pos;
-            } else if (one != HSProto.UNSAFE_BYTE_MARKER) {
-                colBytesSize++;
-            }
-        }
-        
-        if (!oneRow.isEmpty()) {
-            rows.add(oneRow);
-        }
-        this.result = new ResultSetImpl(rows, cols, input.getCharset());
+        HSIndexDescriptor idxDesc = getIndexDescriptor();
+        this.result = new ResultSetImpl(ResultData.decode(input, start, end, idxDesc.getColumns().length),
+                idxDesc, input.getCharset());
         
         return true;
     }
@@ -21,7 +21,7 @@ package com.huodian.hs4j.command;
 import java.security.InvalidParameterException;
 
 import com.huodian.hs4j.core.HSProto;
-import com.huodian.hs4j.core.SafeByteStream;
+import com.huodian.hs4j.core.SafeByteWriter;
 
 public class HSInsert extends HSCommand {
 
@@ -40,8 +40,8 @@ public class HSInsert extends HSCommand {
 	}
 
 	@Override
-	public void encode(SafeByteStream output) {
-		output.writeString(indexDescr.getIndexId(), false);
+	public void encode(SafeByteWriter output) {
+		output.writeString(indexId, false);
 		output.writeByte(HSProto.TOKEN_DELIMITER);
 		output.writeByte(HSProto.OPERATOR_INSERT);
 		output.writeByte(HSProto.TOKEN_DELIMITER);
@@ -21,6 +21,7 @@ package com.huodian.hs4j.command;
 import java.security.InvalidParameterException;
 import com.huodian.hs4j.core.HSProto;
 import com.huodian.hs4j.core.SafeByteStream;
+import com.huodian.hs4j.core.SafeByteWriter;
 
 public class HSModify extends HSFind {
 	protected String[] values;
@@ -39,7 +40,7 @@ public class HSModify extends HSFind {
 	}
 
 	@Override
-	protected void modify(SafeByteStream output) {
+	protected void modify(SafeByteWriter output) {
 		output.writeByte(HSProto.TOKEN_DELIMITER);
 
 		output.writeByte(modOperator);
@@ -19,16 +19,16 @@
 package com.huodian.hs4j.command;
 
 import com.huodian.hs4j.core.HSProto;
-import com.huodian.hs4j.core.SafeByteStream;
+import com.huodian.hs4j.core.SafeByteWriter;
 
 public class HSOpenIndex extends HSCommand {
 	private static final byte COMMA_DELIMITER = ',';
 
 	@Override
-	public void encode(SafeByteStream output) {
+	public void encode(SafeByteWriter output) {
 		output.writeByte(HSProto.OPERATOR_OPEN_INDEX);
 		output.writeByte(HSProto.TOKEN_DELIMITER);
-		output.writeString(indexDescr.getIndexId(), false);
+		output.writeString(indexId, false);
 		output.writeByte(HSProto.TOKEN_DELIMITER);
 		output.writeString(indexDescr.getDbName(), true);
 		output.writeByte(HSProto.TOKEN_DELIMITER);
@@ -18,6 +18,10 @@
 
 package com.huodian.hs4j.core;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -61,6 +65,18 @@ public class HSIndexDescriptor {
 	private final String[] columns;
 	private final String[] filterColumns;
 	private final String[] indexColumns;
+	
+	/**
+	 * name to position(from 0), built once, shared by all queries,
+	 * keys are the names and their lower cases
+	 */
+	private final Map<String, Integer> columnPos;
+	private final Map<String, Integer> filterColumnPos;
+	private final Map<String, Integer> indexColumnPos;
+	/**
+	 * HSRowMapper per class, built on first use
+	 */
+	private final ConcurrentHashMap<Class<?>, HSRowMapper<?>> mappers = new ConcurrentHashMap<Class<?>, HSRowMapper<?>>(4);
 
 	private static AtomicLong generator = new AtomicLong(0L);
 
@@ -117,8 +133,57 @@ public class HSIndexDescriptor {
 		this.columns = columns == null ? new String[0] : columns;
 		this.filterColumns = filterColumns == null ? new String[0] : filterColumns;
 		this.indexColumns = indexColumns == null ? new String[0] : indexColumns;
+		
+		this.columnPos = buildPositions(this.columns);
+		this.filterColumnPos = buildPositions(this.filterColumns);
+		this.indexColumnPos = buildPositions(this.indexColumns);
+	}
+	
+	/**
+	 * exact names first, so "Name" and "name" can be different columns,
+	 * then lower cases for case-insensitive lookup
+	 * @param names
+	 * @return
+	 */
+	private static Map<String, Integer> buildPositions(String[] names) {
+	    Map<String, Integer> map = new HashMap<String, Integer>(names.length * 4);
+	    for(int i = 0; i < names.length; i++) {
+	        if(!map.containsKey(names[i])) {
+	            map.put(names[i], i);
+	        }
+	    }
+	    
+	    String lower;
+	    for(int i = 0; i < names.length; i++) {
+	        lower = names[i].toLowerCase();
+	        if(!map.containsKey(lower)) {
+	            map.put(lower, i);
+	        }
+	    }
+	    return Collections.unmodifiableMap(map);
+	}
+	
+	/**
+	 * @param map
+	 * @param name
+	 * @return
+	 *  -1 if not found
+	 */
+	private static int findPos(Map<String, Integer> map, String name) {
+	    Integer pos = map.get(name);
+	    if(pos == null) { //allocate only if not the same case
+	        pos = map.get(name.toLowerCase());
+	        if(pos == null) {
+	            return -1;
+	        }
+	    }
+	    return pos.intValue();
 	}
 
+	/**
+	 * @return
+	 *  default id, connections write their own small ids instead
+	 */
 	public String getIndexId() {
 		return indexId;
 	}
@@ -147,40 +212,47 @@ public class HSIndexDescriptor {
         return indexColumns;
     }
     
+    /**
+     * @param name
+     *  case-insensitive
+     * @return
+     *  position in the result columns from 0, -1 if not found
+     */
+    public int getColumnPos(String name) {
+        return findPos(columnPos, name);
+    }
+    
+    /**
+     * @param name
+     *  case-insensitive
+     * @return
+     *  position in the filter columns from 0, -1 if not found
+     */
 	public int getFilterColumnPos(String name) {
-	    int n = 0;
-	    for(String s : filterColumns) {
-	        if(s.equals(name)) {
-	            return n;
-	        }
-	        n++;
-	    } 
-	    return -1;
+	    return findPos(filterColumnPos, name);
 	}
 	
-	private static final int findStr(String name, String[] strs) {
-	    if(strs == null) {
-	        return -1;
-	    }
-	    
-        int n = 0;
-        for(String s : strs) {
-            if(s.equals(name)) {
-                return n;
-            }
-            n++;
-        } 
-        return -1;
-	    
+	/**
+	 * @param name
+	 *  case-insensitive
+	 * @return
+	 *  position in the index columns from 0, -1 if not found
+	 */
+	public int getIndexColumnPos(String name) {
+	    return findPos(indexColumnPos, name);
 	}
 
 	public boolean hasFilterColumn(String name) {
-		return findStr(name, filterColumns) != -1;
+		return findPos(filterColumnPos, name) != -1;
 	}
 
 	public boolean hasFilterColumns() {
 		return filterColumns.length > 0;
 	}
+	
+	ConcurrentHashMap<Class<?>, HSRowMapper<?>> getMappers() {
+	    return mappers;
+	}
     
 	@Override
     public String toString() {
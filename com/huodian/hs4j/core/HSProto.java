@@ -30,6 +30,10 @@ public final class HSProto {
 
 	public static final byte UNSAFE_BYTE_MARKER = 0x01;
 	public static final byte UNSAFE_BYTE_MASK = 0x40;
+	/**
+	 * a column of only this byte is NULL
+	 */
+	public static final byte NULL_BYTE = 0x00;
 
 	public static final byte OPERATOR_AUTH = 'A';
 	public static final byte OPERATOR_OPEN_INDEX = 'P';
@@ -45,4 +49,48 @@ public final class HSProto {
 	public static final byte OPERATOR_IN = '@';
 	public static final byte OPERATOR_FILTER = 'F';
 	public static final byte OPERATOR_WHILE = 'W';
+
+	private static final long HIGH_NIBBLES = 0xF0F0F0F0F0F0F0F0L;
+	private static final long LOW_HIGH_NIBBLES = 0x1010101010101010L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	/**
+	 * find the first byte in [0x00 - 0x0f], which must be escaped,
+	 * 8 bytes are tested at a time: a byte is unsafe when its high nibble is zero,
+	 * (x - 0x10) and not x and 0x80 is only set when the high nibble x is zero,
+	 * and a borrow only runs into the higher bytes, so the lowest set bit is exact
+	 * @param b
+	 * @param from
+	 * @param end
+	 *  exclusive
+	 * @return
+	 *  index of the first unsafe byte, or end if there is none
+	 */
+	public static int indexOfUnsafe(final byte[] b, int from, final int end) {
+		long x;
+
+		for (; from + 8 <= end; from += 8) {
+			//little endian, so the first byte is the lowest
+			x = (b[from] & 0xFFL)
+				| (b[from + 1] & 0xFFL) << 8
+				| (b[from + 2] & 0xFFL) << 16
+				| (b[from + 3] & 0xFFL) << 24
+				| (b[from + 4] & 0xFFL) << 32
+				| (b[from + 5] & 0xFFL) << 40
+				| (b[from + 6] & 0xFFL) << 48
+				| (b[from + 7] & 0xFFL) << 56;
+			x &= HIGH_NIBBLES;
+			x = (x - LOW_HIGH_NIBBLES) & ~x & HIGH_BITS;
+			if (x != 0) {
+				return from + (Long.numberOfTrailingZeros(x) >>> 3);
+			}
+		}
+
+		for (; from < end; from++) {
+			if (/*unsigned*/ (b[from] & 0xFF) < 0x10) {
+				return from;
+			}
+		}
+		return end;
+	}
 }
\ No newline at end of file
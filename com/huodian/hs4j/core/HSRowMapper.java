@@ -0,0 +1,355 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.security.InvalidParameterException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Map rows of a find result to objects of a class.
+ * Columns of the index descriptor are bound to setters or fields once,
+ * "create_time" binds to setCreateTime or createTime(case-insensitive),
+ * then rows are read by column position through MethodHandles,
+ * without looking up names. Mappers are cached in the descriptor per class,
+ * so they are dropped together with the descriptor.
+ * 
+ * Supported types: String, byte[], BigDecimal, java.util.Date,
+ * java.sql.Date, java.sql.Timestamp, primitives and their wrappers.
+ * The class must have a constructor without parameters.
+ * @param <T>
+ */
+public class HSRowMapper<T> {
+    private static final int T_STRING = 0;
+    private static final int T_INT = 1;
+    private static final int T_LONG = 2;
+    private static final int T_SHORT = 3;
+    private static final int T_BYTE = 4;
+    private static final int T_BOOLEAN = 5;
+    private static final int T_DOUBLE = 6;
+    private static final int T_FLOAT = 7;
+    private static final int T_BIGDECIMAL = 8;
+    private static final int T_BYTES = 9;
+    private static final int T_DATE = 10;
+    private static final int T_SQL_DATE = 11;
+    private static final int T_TIMESTAMP = 12;
+    private static final int T_OBJECT = 13; //boxed primitives, set null for NULL
+    
+    private final Class<T> type;
+    private final String[] columns;
+    /**
+     * ()Object
+     */
+    private final MethodHandle constructor;
+    /**
+     * one for every column, (Object, value)void, null if not bound
+     */
+    private final MethodHandle[] setters;
+    private final int[] kinds;
+    /**
+     * kind of the value read for T_OBJECT
+     */
+    private final int[] boxedKinds;
+    
+    private HSRowMapper(HSIndexDescriptor indexDescr, Class<T> type) {
+        this.type = type;
+        this.columns = indexDescr.getColumns();
+        
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Constructor<T> c = type.getDeclaredConstructor();
+            c.setAccessible(true);
+            this.constructor = lookup.unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+        } catch(ReflectiveOperationException e) {
+            throw new InvalidParameterException(type.getName() + " has no constructor without parameters");
+        }
+        
+        int num = columns.length;
+        this.setters = new MethodHandle[num];
+        this.kinds = new int[num];
+        this.boxedKinds = new int[num];
+        
+        for(int i = 0; i < num; i++) {
+            bind(lookup, i);
+        }
+    }
+    
+    /**
+     * @param indexDescr
+     * @param type
+     * @return
+     *  mapper cached in the descriptor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> HSRowMapper<T> of(HSIndexDescriptor indexDescr, Class<T> type) {
+        ConcurrentHashMap<Class<?>, HSRowMapper<?>> mappers = indexDescr.getMappers();
+        HSRowMapper<?> mapper = mappers.get(type);
+        if(mapper == null) {
+            mapper = new HSRowMapper<T>(indexDescr, type);
+            HSRowMapper<?> old = mappers.putIfAbsent(type, mapper);
+            if(old != null) {
+                mapper = old;
+            }
+        }
+        return (HSRowMapper<T>)mapper;
+    }
+    
+    /**
+     * map the current row of the result set
+     * @param rs
+     *  result of a find on the index descriptor of the mapper
+     * @return
+     * @throws SQLException
+     */
+    public T map(ResultSet rs) throws SQLException {
+        Object obj;
+        try {
+            obj = constructor.invokeExact();
+        } catch(Error e) {
+            throw e;
+        } catch(RuntimeException e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new SQLException("Fail to create " + type.getName(), t);
+        }
+        
+        int col = 0;
+        try {
+            for(; col < setters.length; col++) {
+                if(setters[col] != null) {
+                    set(obj, col, rs);
+                }
+            }
+        } catch(SQLException e) {
+            throw e;
+        } catch(Error e) {
+            throw e;
+        } catch(RuntimeException e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new SQLException("Fail to set column " + columns[col] + " of " + type.getName(), t);
+        }
+        
+        return type.cast(obj);
+    }
+    
+    /**
+     * map all rows after the current one
+     * @param rs
+     * @return
+     * @throws SQLException
+     */
+    public List<T> mapAll(ResultSet rs) throws SQLException {
+        List<T> list = new ArrayList<T>();
+        while(rs.next()) {
+            list.add(map(rs));
+        }
+        return list;
+    }
+    
+    private void set(Object obj, int col, ResultSet rs) throws Throwable {
+        MethodHandle setter = setters[col];
+        int idx = col + 1;
+        
+        switch(kinds[col]) {
+        case T_INT:
+            setter.invokeExact(obj, rs.getInt(idx));
+            break;
+        case T_LONG:
+            setter.invokeExact(obj, rs.getLong(idx));
+            break;
+        case T_SHORT:
+            setter.invokeExact(obj, rs.getShort(idx));
+            break;
+        case T_BYTE:
+            setter.invokeExact(obj, rs.getByte(idx));
+            break;
+        case T_BOOLEAN:
+            setter.invokeExact(obj, rs.getBoolean(idx));
+            break;
+        case T_DOUBLE:
+            setter.invokeExact(obj, rs.getDouble(idx));
+            break;
+        case T_FLOAT:
+            setter.invokeExact(obj, rs.getFloat(idx));
+            break;
+        case T_OBJECT:
+            Object v = read(rs, idx, boxedKinds[col]);
+            setter.invokeExact(obj, rs.wasNull() ? null : v);
+            break;
+        default:
+            setter.invokeExact(obj, read(rs, idx, kinds[col]));
+        }
+    }
+    
+    private static Object read(ResultSet rs, int idx, int kind) throws SQLException {
+        switch(kind) {
+        case T_STRING:
+            return rs.getString(idx);
+        case T_INT:
+            return rs.getInt(idx);
+        case T_LONG:
+            return rs.getLong(idx);
+        case T_SHORT:
+            return rs.getShort(idx);
+        case T_BYTE:
+            return rs.getByte(idx);
+        case T_BOOLEAN:
+            return rs.getBoolean(idx);
+        case T_DOUBLE:
+            return rs.getDouble(idx);
+        case T_FLOAT:
+            return rs.getFloat(idx);
+        case T_BIGDECIMAL:
+            return rs.getBigDecimal(idx);
+        case T_BYTES:
+            return rs.getBytes(idx);
+        case T_SQL_DATE:
+            return rs.getDate(idx);
+        default: //T_DATE, T_TIMESTAMP
+            return rs.getTimestamp(idx);
+        }
+    }
+    
+    /**
+     * setter first, then field, the handle is adapted to (Object, value)void,
+     * value is the primitive type itself or Object
+     * @param lookup
+     * @param col
+     */
+    private void bind(MethodHandles.Lookup lookup, int col) {
+        String name = normalize(columns[col]);
+        MethodHandle handle = null;
+        Class<?> valueType = null;
+        
+        for(Method m : type.getMethods()) {
+            if(m.getParameterTypes().length == 1 && !Modifier.isStatic(m.getModifiers())
+               && m.getName().startsWith("set") && normalize(m.getName().substring(3)).equals(name)
+               && kindOf(m.getParameterTypes()[0]) >= 0) {
+                try {
+                    m.setAccessible(true); //public method of a non-public class
+                    handle = lookup.unreflect(m);
+                    valueType = m.getParameterTypes()[0];
+                    break;
+                } catch(Exception e) { //IllegalAccessException, SecurityException
+                    //try field
+                }
+            }
+        }
+        
+        for(Class<?> c = type; handle == null && c != null && c != Object.class; c = c.getSuperclass()) {
+            for(Field f : c.getDeclaredFields()) {
+                int mod = f.getModifiers();
+                if(Modifier.isStatic(mod) || Modifier.isFinal(mod)
+                   || !normalize(f.getName()).equals(name) || kindOf(f.getType()) < 0) {
+                    continue;
+                }
+                
+                try {
+                    f.setAccessible(true);
+                    handle = lookup.unreflectSetter(f);
+                    valueType = f.getType();
+                    break;
+                } catch(Exception e) { //IllegalAccessException, SecurityException
+                    //not bound
+                }
+            }
+        }
+        
+        if(handle == null) {
+            return; //column is ignored
+        }
+        
+        int kind = kindOf(valueType);
+        kinds[col] = kind;
+        if(kind == T_OBJECT) {
+            boxedKinds[col] = kindOf(MethodType.methodType(valueType).unwrap().returnType());
+        }
+        
+        Class<?> paramType = valueType.isPrimitive() ? valueType : Object.class;
+        setters[col] = handle.asType(MethodType.methodType(void.class, Object.class, paramType));
+    }
+    
+    /**
+     * @param c
+     * @return
+     *  -1 if not supported
+     */
+    private static int kindOf(Class<?> c) {
+        if(c == String.class) {
+            return T_STRING;
+        } else if(c == int.class) {
+            return T_INT;
+        } else if(c == long.class) {
+            return T_LONG;
+        } else if(c == short.class) {
+            return T_SHORT;
+        } else if(c == byte.class) {
+            return T_BYTE;
+        } else if(c == boolean.class) {
+            return T_BOOLEAN;
+        } else if(c == double.class) {
+            return T_DOUBLE;
+        } else if(c == float.class) {
+            return T_FLOAT;
+        } else if(c == BigDecimal.class) {
+            return T_BIGDECIMAL;
+        } else if(c == byte[].class) {
+            return T_BYTES;
+        } else if(c == java.util.Date.class) {
+            return T_DATE;
+        } else if(c == java.sql.Date.class) {
+            return T_SQL_DATE;
+        } else if(c == java.sql.Timestamp.class) {
+            return T_TIMESTAMP;
+        } else if(c == Integer.class || c == Long.class || c == Short.class || c == Byte.class
+                  || c == Boolean.class || c == Double.class || c == Float.class) {
+            return T_OBJECT;
+        }
+        return -1;
+    }
+    
+    /**
+     * "create_time", "createTime" and "CreateTime" are the same
+     * @param name
+     * @return
+     */
+    private static String normalize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        char c;
+        for(int i = 0; i < name.length(); i++) {
+            c = name.charAt(i);
+            if(c != '_') {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.core;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Parse MySQL DATE/DATETIME/TIMESTAMP text from bytes, without
+ * DateFormat or Calendar:
+ *  yyyy-MM-dd, yyyy-MM-dd HH:mm:ss[.ffffff], yyyyMMdd, yyyyMMddHHmmss.
+ * Zero dates(0000-00-00, 0, a zero month or day) are 0.
+ * Offsets of time zones are cached by local day, it is not thread-safe,
+ * one parser for one ResultSet.
+ */
+public class MySQLDateParser {
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_OF_DAY = 86400000L;
+    private static final int CACHE_SIZE = 16; //power of 2
+
+    private TimeZone cachedZone;
+    private final long[] cachedDays = new long[CACHE_SIZE];
+    private final int[] cachedOffsets = new int[CACHE_SIZE];
+    private int nanos;
+    private boolean zero;
+
+    public MySQLDateParser() {
+        Arrays.fill(cachedDays, Long.MIN_VALUE);
+    }
+
+    /**
+     * @param b
+     * @param off
+     * @param end
+     * @param zone
+     *  time zone of the text
+     * @return
+     *  milli-seconds from 1970-01-01 UTC, 0 for zero dates,
+     *  INVALID if it is not a MySQL date
+     */
+    public long parse(byte[] b, int off, int end, TimeZone zone) {
+        nanos = 0;
+        zero = false;
+        while(off < end && (b[off] & 0xff) <= ' ') {
+            off++;
+        }
+        while(end > off && (b[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+
+        int len = end - off;
+        if(len == 0 || (len == 1 && b[off] == '0')) {
+            zero = true;
+            return 0L;
+        }
+
+        int year, month, day;
+        int hour = 0, minute = 0, second = 0;
+
+        if(b[off + Math.min(4, len - 1)] != '-') { //yyyyMMdd[HHmmss]
+            if(len != 8 && len != 14) {
+                return INVALID;
+            }
+            year = digits(b, off, 4);
+            month = digits(b, off + 4, 2);
+            day = digits(b, off + 6, 2);
+            if(len == 14) {
+                hour = digits(b, off + 8, 2);
+                minute = digits(b, off + 10, 2);
+                second = digits(b, off + 12, 2);
+            }
+        } else {
+            if(len < 10 || b[off + 7] != '-') {
+                return INVALID;
+            }
+            year = digits(b, off, 4);
+            month = digits(b, off + 5, 2);
+            day = digits(b, off + 8, 2);
+
+            int p = off + 10;
+            if(p < end) {
+                if((b[p] != ' ' && b[p] != 'T') || end - p < 9
+                   || b[p + 3] != ':' || b[p + 6] != ':') {
+                    return INVALID;
+                }
+                hour = digits(b, p + 1, 2);
+                minute = digits(b, p + 4, 2);
+                second = digits(b, p + 7, 2);
+                p += 9;
+
+                if(p < end) { //fraction, at most nano-seconds
+                    if(b[p] != '.' || end - p > 10) {
+                        return INVALID;
+                    }
+                    int scale = 100000000;
+                    int d;
+                    for(p++; p < end; p++, scale /= 10) {
+                        d = b[p] - '0';
+                        if(d < 0 || d > 9) {
+                            return INVALID;
+                        }
+                        nanos += d * scale;
+                    }
+                }
+            }
+        }
+
+        if((year | month | day | hour | minute | second) < 0) {
+            return INVALID;
+        }
+        if(year == 0 || month == 0 || day == 0) {
+            nanos = 0;
+            zero = true;
+            return 0L;
+        }
+        if(month > 12 || day > 31 || hour > 23 || minute > 59 || second > 59) {
+            return INVALID;
+        }
+
+        long local = daysFromCivil(year, month, day) * MILLIS_OF_DAY
+                   + hour * 3600000L + minute * 60000L + second * 1000L
+                   + nanos / 1000000;
+        return local - getOffset(zone, local);
+    }
+
+    /**
+     * @return
+     *  fraction of the second of the last parsed value
+     */
+    public int getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return
+     *  true if the last parsed value is a zero date,
+     *  1970-01-01 00:00:00 UTC is also 0 but not a zero date
+     */
+    public boolean isZeroDate() {
+        return zero;
+    }
+
+    /**
+     * @param b
+     * @param off
+     * @param num
+     * @return
+     *  -1 if not digits
+     */
+    private static int digits(byte[] b, int off, int num) {
+        int v = 0;
+        int d;
+        for(int i = off; i < off + num; i++) {
+            d = b[i] - '0';
+            if(d < 0 || d > 9) {
+                return -1;
+            }
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    /**
+     * days from 1970-01-01 in the proleptic gregorian calendar,
+     * algorithm of Howard Hinnant
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    /**
+     * offset of the zone at a local time, cached for days
+     * in which the offset doesn't change
+     * @param zone
+     * @param local
+     * @return
+     */
+    private int getOffset(TimeZone zone, long local) {
+        if(zone != cachedZone) {
+            cachedZone = zone;
+            Arrays.fill(cachedDays, Long.MIN_VALUE);
+        }
+
+        long day = local >= 0 ? local / MILLIS_OF_DAY : (local + 1) / MILLIS_OF_DAY - 1;
+        int slot = (int)(day & (CACHE_SIZE - 1));
+        if(cachedDays[slot] == day) {
+            return cachedOffsets[slot];
+        }
+
+        long dayStart = day * MILLIS_OF_DAY;
+        int first = offsetOfLocal(zone, dayStart);
+        if(first != offsetOfLocal(zone, dayStart + MILLIS_OF_DAY - 1)) {
+            return offsetOfLocal(zone, local); //transition in this day
+        }
+
+        cachedDays[slot] = day;
+        cachedOffsets[slot] = first;
+        return first;
+    }
+
+    private static int offsetOfLocal(TimeZone zone, long local) {
+        return zone.getOffset(local - zone.getOffset(local - zone.getRawOffset()));
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.core;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Cells of a find result, sliced from the response buffer,
+ * cell i(row * columnNum + col) is in data[offsets[2 * i], offsets[2 * i + 1]),
+ * so a result costs a few objects, whatever the number of cells.
+ * Escaped cells are unescaped in place, the others are never copied.
+ * A cell of exactly one raw 0x00 is NULL, marked in a bitmap.
+ * Rows and columns are counted from 0.
+ */
+public class ResultData {
+    private static final int MIN_CELLS = 16;
+    
+    private final byte[] data;
+    /**
+     * start and end of every cell
+     */
+    private final int[] offsets;
+    /**
+     * bit i is set if cell i is NULL, null if there is no NULL
+     */
+    private final long[] nulls;
+    private final int columnNum;
+    private final int rowNum;
+    
+    private ResultData(byte[] data, int[] offsets, long[] nulls, int columnNum, int rowNum) {
+        this.data = data;
+        this.offsets = offsets;
+        this.nulls = nulls;
+        this.columnNum = columnNum;
+        this.rowNum = rowNum;
+    }
+    
+    /**
+     * split and unescape the body of a find response in one pass,
+     * cells missing in the last row are NULL.
+     * The result shares the raw buffer of input, and escaped cells are
+     * unescaped in it, so input must not be written or decoded again.
+     * @param input
+     * @param start
+     *  first byte of the first cell
+     * @param end
+     *  end of the last cell, the packet delimiter is not included
+     * @param columnNum
+     * @return
+     */
+    public static ResultData decode(SafeByteStream input, int start, int end, int columnNum) {
+        final byte[] raw = input.getRaw();
+        int[] offsets = new int[Math.max(columnNum, MIN_CELLS) << 1];
+        long[] nulls = null;
+        
+        int cell = 0;
+        int cellStart = start;
+        int w = start; //unescaped bytes are moved back to w, never beyond pos
+        int pos = start;
+        int i;
+        byte b;
+        
+        while(true) {
+            /**
+             * delimiters, the marker and NULL are all in [0x00 - 0x0f],
+             * so the clean bytes between them are skipped a word at a time
+             */
+            i = HSProto.indexOfUnsafe(raw, pos, end);
+            b = i < end ? raw[i] : HSProto.TOKEN_DELIMITER;
+            
+            if(w != pos) {
+                System.arraycopy(raw, pos, raw, w, i - pos);
+            }
+            w += i - pos;
+            
+            if(b == HSProto.UNSAFE_BYTE_MARKER) {
+                /**
+                 * Patched by sam.tingleff
+                 * "A character in the range [0x00 - 0x0f] is prefixed by 0x01 and shifted by 0x40"
+                 */
+                if(i + 1 < end && (raw[i + 1] & 0xFF) >= 0x10) {
+                    raw[w++] = (byte)(raw[i + 1] & ~HSProto.UNSAFE_BYTE_MASK);
+                    pos = i + 2;
+                } else {
+                    pos = i + 1; //a dangling marker is dropped
+                }
+                continue;
+            }
+            
+            if(b != HSProto.TOKEN_DELIMITER && b != HSProto.PACKET_DELIMITER) {
+                raw[w++] = b; //other control bytes are content
+                pos = i + 1;
+                continue;
+            }
+            
+            if(cell << 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length << 1);
+            }
+            
+            if(i - cellStart == 1 && raw[cellStart] == HSProto.NULL_BYTE) {
+                nulls = setNull(nulls, cell, offsets.length >>> 1);
+                offsets[cell << 1] = cellStart;
+                offsets[(cell << 1) + 1] = cellStart; //NULL has no content
+            } else {
+                offsets[cell << 1] = cellStart;
+                offsets[(cell << 1) + 1] = w;
+            }
+            cell++;
+            
+            if(i >= end) {
+                break;
+            }
+            cellStart = w = pos = i + 1;
+        }
+        
+        int rowNum = (cell + columnNum - 1) / columnNum;
+        int totalCells = rowNum * columnNum;
+        if(offsets.length < totalCells << 1) {
+            offsets = Arrays.copyOf(offsets, totalCells << 1);
+        }
+        
+        for(; cell < totalCells; cell++) { //incomplete last row
+            nulls = setNull(nulls, cell, totalCells);
+            offsets[cell << 1] = end;
+            offsets[(cell << 1) + 1] = end;
+        }
+        
+        //sized when the first NULL was found, isNull reads up to the last cell
+        if(nulls != null && nulls.length < (totalCells + 63) >>> 6) {
+            nulls = Arrays.copyOf(nulls, (totalCells + 63) >>> 6);
+        }
+        
+        return new ResultData(raw, offsets, nulls, columnNum, rowNum);
+    }
+    
+    private static long[] setNull(long[] nulls, int cell, int capacity) {
+        if(nulls == null) {
+            nulls = new long[(capacity + 63) >>> 6];
+        } else if(nulls.length <= cell >>> 6) {
+            nulls = Arrays.copyOf(nulls, Math.max(nulls.length << 1, (cell >>> 6) + 1));
+        }
+        nulls[cell >>> 6] |= 1L << cell;
+        return nulls;
+    }
+    
+    public int getRowCount() {
+        return rowNum;
+    }
+    
+    public int getColumnCount() {
+        return columnNum;
+    }
+    
+    public boolean isNull(int row, int col) {
+        if(nulls == null) {
+            return false;
+        }
+        int cell = row * columnNum + col;
+        return (nulls[cell >>> 6] & (1L << cell)) != 0;
+    }
+    
+    /**
+     * shared by all cells, read it with getOffset and getLength
+     * @return
+     */
+    public byte[] getData() {
+        return data;
+    }
+    
+    public int getOffset(int row, int col) {
+        return offsets[(row * columnNum + col) << 1];
+    }
+    
+    public int getLength(int row, int col) {
+        int cell = (row * columnNum + col) << 1;
+        return offsets[cell + 1] - offsets[cell];
+    }
+    
+    /**
+     * @param row
+     * @param col
+     * @return
+     *  copy of the cell, null if it is NULL
+     */
+    public byte[] getBytes(int row, int col) {
+        if(isNull(row, col)) {
+            return null;
+        }
+        
+        int cell = (row * columnNum + col) << 1;
+        int off = offsets[cell];
+        byte[] b = new byte[offsets[cell + 1] - off];
+        System.arraycopy(data, off, b, 0, b.length);
+        return b;
+    }
+    
+    /**
+     * @param row
+     * @param col
+     * @param charset
+     * @return
+     *  null if it is NULL
+     */
+    public String getString(int row, int col, Charset charset) {
+        if(isNull(row, col)) {
+            return null;
+        }
+        
+        int cell = (row * columnNum + col) << 1;
+        return new String(data, offsets[cell], offsets[cell + 1] - offsets[cell], charset);
+    }
+}
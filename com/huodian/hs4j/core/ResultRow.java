@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.core;
+
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+
+/**
+ * One row of a find result, detached from the cursor of the ResultSet,
+ * a view on the ResultData, nothing is copied.
+ * Columns are counted from 1 as in ResultSet
+ */
+public class ResultRow {
+	private final ResultSetImpl resultSet;
+	private final ResultData resultData;
+	private final int row;
+	private final String[] fieldList;
+	private final Charset charset;
+
+	/**
+	 * @param resultSet
+	 * @param row
+	 *  from 0
+	 */
+	public ResultRow(ResultSetImpl resultSet, int row) {
+		this.resultSet = resultSet;
+		this.resultData = resultSet.getResultData();
+		this.row = row;
+		this.fieldList = resultSet.getFieldList();
+		this.charset = resultSet.getCharset();
+	}
+
+	public int getColumnCount() {
+	    return fieldList.length;
+	}
+
+	public String getColumnName(int columnIndex) throws SQLException {
+	    checkCol(columnIndex);
+	    return fieldList[columnIndex - 1];
+	}
+
+	/**
+	 * @param columnName
+	 *  case-insensitive
+	 * @return
+	 * @throws SQLException
+	 */
+	public int findColumn(String columnName) throws SQLException {
+	    return resultSet.findColumn(columnName);
+	}
+
+	/**
+	 * @param columnIndex
+	 * @return
+	 *  copy of the unescaped bytes, null if it is NULL
+	 * @throws SQLException
+	 */
+	public byte[] getBytes(int columnIndex) throws SQLException {
+	    checkCol(columnIndex);
+	    return resultData.getBytes(row, columnIndex - 1);
+	}
+
+	public byte[] getBytes(String columnName) throws SQLException {
+	    return getBytes(findColumn(columnName));
+	}
+
+	public String getString(int columnIndex) throws SQLException {
+	    checkCol(columnIndex);
+	    return resultData.getString(row, columnIndex - 1, charset);
+	}
+
+	public String getString(String columnName) throws SQLException {
+	    return getString(findColumn(columnName));
+	}
+
+	/**
+	 * NULL is sent as a single 0x00 by HandlerSocket
+	 * @param columnIndex
+	 * @return
+	 * @throws SQLException
+	 */
+	public boolean isNull(int columnIndex) throws SQLException {
+	    checkCol(columnIndex);
+	    return resultData.isNull(row, columnIndex - 1);
+	}
+
+	private void checkCol(int columnIndex) throws SQLException {
+		if (columnIndex <= 0 || columnIndex > fieldList.length) {
+			throw new SQLException("Invalid col:" + columnIndex);
+		}
+	}
+
+	@Override
+	public String toString() {
+	    StringBuilder sb = new StringBuilder("ResultRow(");
+	    for(int i = 0; i < fieldList.length; i++) {
+	        if(i > 0) {
+	            sb.append(',');
+	        }
+	        sb.append(fieldList[i]).append('=').append(resultData.getString(row, i, charset));
+	    }
+	    return sb.append(')').toString();
+	}
+}
@@ -34,13 +34,12 @@ import java.sql.SQLXML;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
-import java.text.DateFormat;
-import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A java.sql.ResultSet implementation,most methods are not supported,use
@@ -50,8 +49,12 @@ import java.util.TimeZone;
  * @date 2010-11-28
  */
 public class ResultSetImpl implements ResultSet {
-	private final List<List<byte[]>> rows;
+	private final ResultData resultData;
 	private final String[] fieldList;
+	/**
+	 * positions of columns are shared with the descriptor if it is given
+	 */
+	private final HSIndexDescriptor indexDescr;
     private Map<String, Integer> fieldMap = null;
 	private int rowNo = this.BEFORE_FIRST;
 	private final Charset charset;
@@ -61,16 +64,104 @@ public class ResultSetImpl implements ResultSet {
 	private final int AFTER_LAST = Integer.MAX_VALUE;
 
 	private boolean lastWasNull = false;
-
-	public ResultSetImpl(List<List<byte[]>> rows, String[] fieldList, Charset charset) {
-		this.rows = rows;
+	
+	/**
+	 * digits, signs and spaces are single ASCII bytes in the charset,
+	 * so numbers can be parsed from the bytes without decoding
+	 */
+	private final boolean asciiNumbers;
+	/**
+	 * set by parseLong/parseDouble when the bytes can't be parsed directly,
+	 * the caller falls back to parse the String then
+	 */
+	private boolean slowPath = false;
+	/**
+	 * created when a date is read the first time
+	 */
+	private MySQLDateParser dateParser;
+	private TimeZone defaultZone;
+	
+	private static final String NUMBER_CHARS = "0123456789+-.eE \t";
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final ConcurrentHashMap<Charset, Boolean> ASCII_NUMBERS = new ConcurrentHashMap<Charset, Boolean>();
+	
+	/**
+	 * exactly representable powers of ten
+	 */
+	private static final double[] POW10 = {
+	    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+	    1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final float[] POW10F = {
+	    1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+	private static final long MAX_EXACT_DOUBLE = 1L << 53;
+	private static final long MAX_EXACT_FLOAT = 1L << 24;
+
+	public ResultSetImpl(ResultData resultData, String[] fieldList, Charset charset) {
+		this(resultData, fieldList, null, charset);
+	}
+	
+	/**
+	 * @param resultData
+	 * @param indexDescr
+	 *  columns of the result are the columns of it
+	 * @param charset
+	 */
+	public ResultSetImpl(ResultData resultData, HSIndexDescriptor indexDescr, Charset charset) {
+		this(resultData, indexDescr.getColumns(), indexDescr, charset);
+	}
+	
+	private ResultSetImpl(ResultData resultData, String[] fieldList, HSIndexDescriptor indexDescr, Charset charset) {
+		this.resultData = resultData;
 		this.fieldList = fieldList;
+		this.indexDescr = indexDescr;
 		this.charset = charset;
+		this.asciiNumbers = isAsciiNumbers(charset);
+	}
+	
+	private static boolean isAsciiNumbers(Charset charset) {
+	    Boolean v = ASCII_NUMBERS.get(charset);
+	    if(v == null) {
+	        v = Arrays.equals(NUMBER_CHARS.getBytes(charset), NUMBER_CHARS.getBytes(ASCII));
+	        ASCII_NUMBERS.put(charset, v);
+	    }
+	    return v.booleanValue();
+	}
+
+	ResultData getResultData() {
+	    return this.resultData;
+	}
+	
+	String[] getFieldList() {
+	    return this.fieldList;
+	}
+	
+	Charset getCharset() {
+	    return this.charset;
+	}
+	
+	/**
+	 * @return
+	 *  number of rows
+	 */
+	public int getRowCount() {
+	    return this.resultData.getRowCount();
+	}
+	
+	/**
+	 * row detached from the cursor of the result set
+	 * @param index
+	 *  from 0
+	 * @return
+	 */
+	public ResultRow getRow(int index) {
+	    return new ResultRow(this, index);
 	}
 
     @Override
 	public boolean absolute(int row) throws SQLException {
-		if (this.rows.isEmpty()) {
+		if (this.resultData.getRowCount() == 0) {
 			return false;
 		}
 		
@@ -78,18 +169,18 @@ public class ResultSetImpl implements ResultSet {
 			throw new SQLException("row must not be zero");
 		}
 		
-		if (row > this.rows.size()) {
+		if (row > this.resultData.getRowCount()) {
 			this.rowNo = this.AFTER_LAST;
 			return false;
 		}
 		
-		if (row < 0 && -row > this.rows.size()) {
+		if (row < 0 && -row > this.resultData.getRowCount()) {
 			this.rowNo = this.BEFORE_FIRST;
 			return false;
 		}
 		
 		if (row < 0) {
-			int newPos = this.rows.size() + row + 1;
+			int newPos = this.resultData.getRowCount() + row + 1;
 			return this.absolute(newPos);
 		}
 		
@@ -100,7 +191,7 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public void afterLast() throws SQLException {
-		if (this.rows.isEmpty()) {
+		if (this.resultData.getRowCount() == 0) {
 			return;
 		}
 		this.rowNo = this.AFTER_LAST;
@@ -108,7 +199,7 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public void beforeFirst() throws SQLException {
-		if (this.rows.isEmpty()) {
+		if (this.resultData.getRowCount() == 0) {
 			return;
 		}
 		this.rowNo = this.BEFORE_FIRST;
@@ -135,6 +226,14 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public int findColumn(String columnName) throws SQLException {
+	    if(this.indexDescr != null) {
+	        int pos = this.indexDescr.getColumnPos(columnName);
+	        if(pos < 0) {
+	            throw new SQLException("column " + columnName + " is not in result set");
+	        }
+	        return pos + 1;
+	    }
+	    
 	    if(this.fieldMap == null) {
 	        this.fieldMap = new HashMap<String, Integer>();
 	        int index = 1;
@@ -152,7 +251,7 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public boolean first() throws SQLException {
-		if (this.rows.isEmpty()) {
+		if (this.resultData.getRowCount() == 0) {
 			return false;
 		}
 		this.rowNo = 0;
@@ -170,7 +269,7 @@ public class ResultSetImpl implements ResultSet {
 	}
 
 	private void checkRowCol(int columnIndex) throws SQLException {
-		if (this.rowNo < 0 || this.rowNo + 1 > this.rows.size()) {
+		if (this.rowNo < 0 || this.rowNo + 1 > this.resultData.getRowCount()) {
 			throw new SQLException("Invalid row:" + this.rowNo);
 		}
 		if (columnIndex <= 0 || columnIndex > this.fieldList.length) {
@@ -268,6 +367,11 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public byte getByte(int columnIndex) throws SQLException {
+	    long v = this.parseLong(columnIndex, Byte.MIN_VALUE, Byte.MAX_VALUE);
+	    if (!this.slowPath) {
+	        return (byte)v;
+	    }
+	    
 		String stringVal = this.getString(columnIndex, true);
         if (isNull(stringVal)) {
             return (byte)0;
@@ -331,8 +435,8 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public Date getDate(int columnIndex, Calendar cal) throws SQLException {
-		String stringVal = this.getString(columnIndex);
-		return new Date(getDateFromString(stringVal, cal));
+		long millis = this.getDateMillis(columnIndex, cal);
+		return this.lastWasNull ? null : new Date(millis);
 	}
 
     @Override
@@ -350,27 +454,53 @@ public class ResultSetImpl implements ResultSet {
 		return this.getDate(this.findColumn(columnName), null);
 	}
 
-	private static final long getDateFromString(String val, Calendar cal) throws SQLException {
-		//0000-00-00 | 0000-00-00 00:00:00 | 00000000000000 | 0
-		if (isNull(val) || val.indexOf("0000") == 0 || val.equals("0")) {
-		    return 0L;
+	/**
+	 * parse MySQL date or datetime from the bytes of the cell,
+	 * 0 for zero dates and empty, lastWasNull is set for NULL
+	 * @param columnIndex
+	 * @param cal
+	 *  time zone of the value, null for the default time zone
+	 * @return
+	 * @throws SQLException
+	 */
+	private long getDateMillis(int columnIndex, Calendar cal) throws SQLException {
+		this.checkRowCol(columnIndex);
+		int col = columnIndex - 1;
+		if (this.resultData.isNull(this.rowNo, col)) {
+			this.lastWasNull = true;
+			return 0L;
 		}
-
-		DateFormat dateFormat = DateFormat.getDateTimeInstance();
-		if (cal != null) {
-			TimeZone timeZone = cal.getTimeZone();
-			dateFormat.setTimeZone(timeZone);
+		this.lastWasNull = false;
+		
+		if (this.dateParser == null) {
+			this.dateParser = new MySQLDateParser();
+			this.defaultZone = TimeZone.getDefault();
 		}
+		TimeZone zone = (cal != null) ? cal.getTimeZone() : this.defaultZone;
 		
-		try {
-			return dateFormat.parse(val).getTime();
-		} catch (ParseException e) {
-			throw new SQLException("Parse date error:" + val);
+		long millis;
+		if (this.asciiNumbers) {
+			int off = this.resultData.getOffset(this.rowNo, col);
+			millis = this.dateParser.parse(this.resultData.getData(), off,
+			        off + this.resultData.getLength(this.rowNo, col), zone);
+		} else {
+			byte[] b = this.getString(columnIndex).getBytes(ASCII);
+			millis = this.dateParser.parse(b, 0, b.length, zone);
 		}
+		
+		if (millis == MySQLDateParser.INVALID) {
+			throw new SQLException("Parse date error:" + this.getString(columnIndex));
+		}
+		return millis;
 	}
 
     @Override
 	public double getDouble(int columnIndex) throws SQLException {
+	    double v = this.parseDouble(columnIndex, MAX_EXACT_DOUBLE, POW10.length - 1);
+	    if (!this.slowPath) {
+	        return v;
+	    }
+	    
         String stringVal = this.getString(columnIndex, true);
         if (isNull(stringVal)) {
             return 0d;
@@ -400,6 +530,11 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public float getFloat(int columnIndex) throws SQLException {
+	    double v = this.parseDouble(columnIndex, MAX_EXACT_FLOAT, POW10F.length - 1);
+	    if (!this.slowPath) {
+	        return (float)v;
+	    }
+	    
         String stringVal = this.getString(columnIndex, true);
         if (isNull(stringVal)) {
             return 0f;
@@ -419,6 +554,11 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public int getInt(int columnIndex) throws SQLException {
+	    long v = this.parseLong(columnIndex, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	    if (!this.slowPath) {
+	        return (int)v;
+	    }
+	    
 	    String stringVal = this.getString(columnIndex, true);
         if (isNull(stringVal)) {
             return 0;
@@ -438,6 +578,11 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public long getLong(int columnIndex) throws SQLException {
+	    long v = this.parseLong(columnIndex, Long.MIN_VALUE, Long.MAX_VALUE);
+	    if (!this.slowPath) {
+	        return v;
+	    }
+	    
         String stringVal = this.getString(columnIndex, true);
         if (isNull(stringVal)) {
             return 0L;
@@ -497,6 +642,11 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public short getShort(int columnIndex) throws SQLException {
+	    long v = this.parseLong(columnIndex, Short.MIN_VALUE, Short.MAX_VALUE);
+	    if (!this.slowPath) {
+	        return (short)v;
+	    }
+	    
         String stringVal = this.getString(columnIndex, true);
         if (isNull(stringVal)) {
             return 0;
@@ -526,28 +676,20 @@ public class ResultSetImpl implements ResultSet {
 
     protected String getString(int columnIndex, boolean trim) throws SQLException {
         this.checkRowCol(columnIndex);
-        byte[] data = this.getColumnData(columnIndex);
-        if (data == null) {
+        if (this.resultData.isNull(this.rowNo, columnIndex - 1)) {
+            this.lastWasNull = true;
             return null;
         }
+        this.lastWasNull = false;
         
-        String s = new String(data, charset);
+        String s = this.resultData.getString(this.rowNo, columnIndex - 1, charset);
         
         return trim ? s.trim() : s;
     }
 
 	private byte[] getColumnData(int columnIndex) {
-		List<byte[]> row = this.rows.get(this.rowNo);
-		if (row == null) {
-			this.lastWasNull = true;
-			return null;
-		}
-		byte[] data = row.get(columnIndex - 1);
-		if (data == null) {
-			this.lastWasNull = true;
-			return null;
-		}
-		this.lastWasNull = false;
+		byte[] data = this.resultData.getBytes(this.rowNo, columnIndex - 1);
+		this.lastWasNull = (data == null);
 		return data;
 	}
 
@@ -578,8 +720,16 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
-		String stringVal = this.getString(columnIndex, true);
-        return new Timestamp(getDateFromString(stringVal, cal));
+		long millis = this.getDateMillis(columnIndex, cal);
+		if (this.lastWasNull) {
+			return null;
+		}
+		
+		Timestamp ts = new Timestamp(millis);
+		if (!this.dateParser.isZeroDate()) {
+			ts.setNanos(this.dateParser.getNanos());
+		}
+		return ts;
 	}
 
     @Override
@@ -653,7 +803,7 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public boolean isFirst() throws SQLException {
-		if (this.rows.isEmpty()) {
+		if (this.resultData.getRowCount() == 0) {
 			return false;
 		}
 		return this.rowNo == 0;
@@ -661,18 +811,18 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public boolean isLast() throws SQLException {
-		if (this.rows.isEmpty()) {
+		if (this.resultData.getRowCount() == 0) {
 			return false;
 		}
-		return this.rowNo + 1 == this.rows.size();
+		return this.rowNo + 1 == this.resultData.getRowCount();
 	}
 
     @Override
 	public boolean last() throws SQLException {
-		if (this.rows.isEmpty()) {
+		if (this.resultData.getRowCount() == 0) {
 			return false;
 		}
-		this.rowNo = this.rows.size() - 1;
+		this.rowNo = this.resultData.getRowCount() - 1;
 		return true;
 	}
 
@@ -688,11 +838,11 @@ public class ResultSetImpl implements ResultSet {
 
     @Override
 	public boolean next() throws SQLException {
-		if (this.rows.isEmpty()) {
+		if (this.resultData.getRowCount() == 0) {
 			return false;
 		}
 		this.normalRowNO();
-		if (this.rowNo + 1 >= this.rows.size()) {
+		if (this.rowNo + 1 >= this.resultData.getRowCount()) {
 			return false;
 		}
 		this.rowNo++;
@@ -703,13 +853,13 @@ public class ResultSetImpl implements ResultSet {
 		if (this.rowNo == this.BEFORE_FIRST) {
 			this.rowNo = -1;
 		} else if (this.rowNo == this.AFTER_LAST) {
-			this.rowNo = this.rows.size();
+			this.rowNo = this.resultData.getRowCount();
 		}
 	}
 
     @Override
 	public boolean previous() throws SQLException {
-		if (this.rows.isEmpty()) {
+		if (this.resultData.getRowCount() == 0) {
 			return false;
 		}
 		this.normalRowNO();
@@ -1258,6 +1408,202 @@ public class ResultSetImpl implements ResultSet {
         throw new UnsupportedOperationException();
 	}
 
+	/**
+	 * parse an integer from the bytes of the cell without a String,
+	 * same as parsing the trimmed String, NULL and empty are 0.
+	 * Set slowPath if it can't be done, e.g. overflow, non ASCII bytes,
+	 * the caller parses the String then, to get the same errors
+	 * @param columnIndex
+	 * @param min
+	 * @param max
+	 * @return
+	 * @throws SQLException
+	 */
+	private long parseLong(int columnIndex, long min, long max) throws SQLException {
+	    this.checkRowCol(columnIndex);
+	    this.slowPath = !this.asciiNumbers;
+	    if (this.slowPath) {
+	        return 0L;
+	    }
+	    
+	    int col = columnIndex - 1;
+	    if (this.resultData.isNull(this.rowNo, col)) {
+	        this.lastWasNull = true;
+	        return 0L;
+	    }
+	    this.lastWasNull = false;
+	    
+	    byte[] data = this.resultData.getData();
+	    int pos = this.resultData.getOffset(this.rowNo, col);
+	    int end = pos + this.resultData.getLength(this.rowNo, col);
+	    
+	    //trim
+	    while (pos < end && (data[pos] & 0xff) <= ' ') {
+	        pos++;
+	    }
+	    while (end > pos && (data[end - 1] & 0xff) <= ' ') {
+	        end--;
+	    }
+	    if (pos == end) {
+	        return 0L;
+	    }
+	    
+	    boolean negative = false;
+	    byte b = data[pos];
+	    if (b == '-' || b == '+') {
+	        negative = (b == '-');
+	        if (++pos == end) {
+	            this.slowPath = true;
+	            return 0L;
+	        }
+	    }
+	    
+	    //accumulated negatively as Long.parseLong, MIN_VALUE has no positive
+	    long limit = negative ? min : -max;
+	    long multmin = limit / 10;
+	    long result = 0;
+	    int digit;
+	    
+	    for (; pos < end; pos++) {
+	        digit = data[pos] - '0';
+	        if (digit < 0 || digit > 9 || result < multmin) {
+	            this.slowPath = true;
+	            return 0L;
+	        }
+	        result *= 10;
+	        if (result < limit + digit) {
+	            this.slowPath = true;
+	            return 0L;
+	        }
+	        result -= digit;
+	    }
+	    
+	    return negative ? result : -result;
+	}
+	
+	/**
+	 * parse a decimal from the bytes of the cell without a String,
+	 * only when it is exact: the digits fit in maxMantissa and
+	 * the power of ten is not bigger than maxExp, so one multiplication
+	 * or division gives the correctly rounded value(Clinger's fast path).
+	 * Set slowPath for the others, e.g. too many digits, NaN, hex
+	 * @param columnIndex
+	 * @param maxMantissa
+	 *  2^53 for double, 2^24 for float
+	 * @param maxExp
+	 *  22 for double, 10 for float
+	 * @return
+	 * @throws SQLException
+	 */
+	private double parseDouble(int columnIndex, long maxMantissa, int maxExp) throws SQLException {
+	    this.checkRowCol(columnIndex);
+	    this.slowPath = !this.asciiNumbers;
+	    if (this.slowPath) {
+	        return 0d;
+	    }
+	    
+	    int col = columnIndex - 1;
+	    if (this.resultData.isNull(this.rowNo, col)) {
+	        this.lastWasNull = true;
+	        return 0d;
+	    }
+	    this.lastWasNull = false;
+	    
+	    byte[] data = this.resultData.getData();
+	    int pos = this.resultData.getOffset(this.rowNo, col);
+	    int end = pos + this.resultData.getLength(this.rowNo, col);
+	    
+	    while (pos < end && (data[pos] & 0xff) <= ' ') {
+	        pos++;
+	    }
+	    while (end > pos && (data[end - 1] & 0xff) <= ' ') {
+	        end--;
+	    }
+	    if (pos == end) {
+	        return 0d;
+	    }
+	    
+	    boolean negative = false;
+	    byte b = data[pos];
+	    if (b == '-' || b == '+') {
+	        negative = (b == '-');
+	        pos++;
+	    }
+	    
+	    long mantissa = 0;
+	    int exp10 = 0;
+	    int digits = 0;
+	    boolean dot = false;
+	    int digit;
+	    
+	    for (; pos < end; pos++) {
+	        b = data[pos];
+	        digit = b - '0';
+	        if (digit >= 0 && digit <= 9) {
+	            mantissa = mantissa * 10 + digit;
+	            if (mantissa >= maxMantissa) {
+	                this.slowPath = true;
+	                return 0d;
+	            }
+	            digits++;
+	            if (dot) {
+	                exp10--;
+	            }
+	        } else if (b == '.' && !dot) {
+	            dot = true;
+	        } else {
+	            break;
+	        }
+	    }
+	    
+	    if (digits == 0) {
+	        this.slowPath = true;
+	        return 0d;
+	    }
+	    
+	    if (pos < end) { //exponent
+	        if (data[pos] != 'e' && data[pos] != 'E' || ++pos == end) {
+	            this.slowPath = true;
+	            return 0d;
+	        }
+	        
+	        boolean negativeExp = false;
+	        if (data[pos] == '-' || data[pos] == '+') {
+	            negativeExp = (data[pos] == '-');
+	            pos++;
+	        }
+	        
+	        int exp = 0;
+	        if (pos == end) {
+	            this.slowPath = true;
+	            return 0d;
+	        }
+	        for (; pos < end; pos++) {
+	            digit = data[pos] - '0';
+	            if (digit < 0 || digit > 9 || exp > maxExp * 2) {
+	                this.slowPath = true;
+	                return 0d;
+	            }
+	            exp = exp * 10 + digit;
+	        }
+	        exp10 += negativeExp ? -exp : exp;
+	    }
+	    
+	    if (exp10 > maxExp || exp10 < -maxExp) {
+	        this.slowPath = true;
+	        return 0d;
+	    }
+	    
+	    double v;
+	    if (maxMantissa == MAX_EXACT_FLOAT) { //float arithmetic, no double rounding
+	        float f = (float)mantissa;
+	        v = exp10 >= 0 ? f * POW10F[exp10] : f / POW10F[-exp10];
+	    } else {
+	        v = exp10 >= 0 ? mantissa * POW10[exp10] : mantissa / POW10[-exp10];
+	    }
+	    return negative ? -v : v;
+	}
+
 	private static final boolean isNull(String stringVal) {
 	    return stringVal == null || stringVal.isEmpty();
 	}
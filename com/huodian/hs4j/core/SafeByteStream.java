@@ -25,7 +25,15 @@ import java.nio.charset.Charset;
 import java.security.InvalidParameterException;
 import java.util.List;
 
+/**
+ * Growable byte buffer, not thread-safe.
+ * An instance is only used by one thread at a time, the event loop fills
+ * the response of a result, then the caller decodes it after the result
+ * is finished, which is a happens-before edge.
+ */
 public class SafeByteStream {
+	private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+	
 	private final int buffIncStepSize;
 	private final int initialBufferSize;
 	private final Charset charset;
@@ -52,7 +60,7 @@ public class SafeByteStream {
 		this.unsafeBuffer[0] = HSProto.UNSAFE_BYTE_MARKER;
 	}
 
-	public synchronized void writeByte(byte b, boolean safe) {
+	public void writeByte(byte b, boolean safe) {
 		if (safe && /*unsigned*/ (0xFF & b) < 0x10) {
 			unsafeBuffer[1] = (byte) (b ^ HSProto.UNSAFE_BYTE_MASK);
 			_write(unsafeBuffer, 0, 2, false);
@@ -62,7 +70,7 @@ public class SafeByteStream {
 		}
 	}
 
-    public synchronized void writeByte(byte b) {
+    public void writeByte(byte b) {
         if (writePos + 1 > this.buffer.length) {
             ensureSize(writePos + 1);
         }
@@ -70,20 +78,34 @@ public class SafeByteStream {
         this.buffer[writePos++] = b;
     }
 
-	public synchronized void writeBytes(final byte[] b, boolean safe) {
+	public void writeBytes(final byte[] b, boolean safe) {
 		_write(b, 0, b.length, safe);
 	}
 
-	public synchronized void writeBytes(final byte[] b, final int offset, final int length, boolean safe) {
+	public void writeBytes(final byte[] b, final int offset, final int length, boolean safe) {
 		_write(b, offset, length, safe);
 	}
 
-	public synchronized void writeString(String str, boolean safe) {
+	/**
+	 * read length bytes from buf and append them without escaping
+	 * @param buf
+	 * @param length
+	 */
+	public void writeBytes(final ByteBuf buf, final int length) {
+		if (writePos + length > this.buffer.length) {
+			ensureSize(writePos + length);
+		}
+
+		buf.readBytes(this.buffer, writePos, length);
+		writePos += length;
+	}
+
+	public void writeString(String str, boolean safe) {
 		final byte[] b = str.getBytes(charset);
 		_write(b, 0, b.length, safe);
 	}
 
-	public synchronized void writeStrings(List<String> strings, byte[] delimiter, boolean safe) {
+	public void writeStrings(List<String> strings, byte[] delimiter, boolean safe) {
 		int count = strings.size();
 		byte[] b;
 
@@ -96,7 +118,7 @@ public class SafeByteStream {
 		}
 	}
 
-    public synchronized void writeStrings(String[] strings, byte[] delimiter, boolean safe) {
+    public void writeStrings(String[] strings, byte[] delimiter, boolean safe) {
         int count = strings.length;
         byte[] b;
 
@@ -109,7 +131,7 @@ public class SafeByteStream {
         }
     }
 
-    public synchronized void writeStrings(String[] strings, byte delimiter, boolean safe) {
+    public void writeStrings(String[] strings, byte delimiter, boolean safe) {
         int count = strings.length;
         byte[] b;
 
@@ -136,21 +158,26 @@ public class SafeByteStream {
 			throw new IndexOutOfBoundsException();
 		}
 
-		if (safe) {
-			if (writePos + 2 * length > this.buffer.length) {
-				ensureSize(writePos + 2 * length);
+		final int end = offset + length;
+		int i;
+
+		if (safe && (i = HSProto.indexOfUnsafe(bytes, offset, end)) < end) {
+			//bytes before i are clean, only the rest may double
+			if (writePos + (i - offset) + 2 * (end - i) > this.buffer.length) {
+				ensureSize(writePos + (i - offset) + 2 * (end - i));
 			}
 
-			for (int i = offset; i < offset + length; ++i) {
-				byte b = bytes[i];
+			int start = offset;
+			do {
+				System.arraycopy(bytes, start, this.buffer, writePos, i - start);
+				writePos += i - start;
+				buffer[writePos++] = HSProto.UNSAFE_BYTE_MARKER;
+				buffer[writePos++] = (byte) (bytes[i] ^ HSProto.UNSAFE_BYTE_MASK);
+				start = i + 1;
+			} while ((i = HSProto.indexOfUnsafe(bytes, start, end)) < end);
 
-				if (/*unsigned*/ (b & 0xFF) < 0x10) {
-					buffer[writePos++] = HSProto.UNSAFE_BYTE_MARKER;
-					buffer[writePos++] = (byte) (b ^ HSProto.UNSAFE_BYTE_MASK);
-				} else {
-					buffer[writePos++] = b;
-				}
-			}
+			System.arraycopy(bytes, start, this.buffer, writePos, end - start);
+			writePos += end - start;
 		} else {
 			if (writePos + length > this.buffer.length) {
 				ensureSize(writePos + length);
@@ -161,10 +188,17 @@ public class SafeByteStream {
 		}
 	}
 
+	/**
+	 * grow by half of the current size, or buffIncStepSize if it is bigger,
+	 * so the bytes copied in total are linear to the final size
+	 * @param size
+	 */
 	private void ensureSize(final int size) {
-		final int computedSize = (int) Math.min((this.buffer.length + 1) * 1.5, this.buffer.length
-				+ buffIncStepSize);
-		final int newSize = Math.max(size, computedSize);
+		if (size < 0 || size > MAX_BUFFER_SIZE) {
+			throw new OutOfMemoryError("Buffer is too large:" + size);
+		}
+		final long computedSize = (long)this.buffer.length + Math.max(this.buffer.length >> 1, buffIncStepSize);
+		final int newSize = (int)Math.max(size, Math.min(computedSize, MAX_BUFFER_SIZE));
 		final byte[] newBuffer = new byte[newSize];
 
 		System.arraycopy(this.buffer, 0, newBuffer, 0, writePos);
@@ -172,7 +206,7 @@ public class SafeByteStream {
 		this.buffer = newBuffer;
 	}
 
-	public synchronized byte[] toByteArray() {
+	public byte[] toByteArray() {
 		final byte[] result = new byte[writePos];
 		System.arraycopy(buffer, 0, result, 0, writePos);
 		return result;
@@ -225,9 +259,7 @@ public class SafeByteStream {
             throw new InvalidParameterException("Wrong buf parameter");
         }
         
-        byte[] bytes = new byte[len];
-        buf.readBytes(bytes);
-        writeBytes(bytes, 0, len, false);
+        writeBytes(buf, len);
     }
     
 	public ByteBuf copy() {
@@ -240,12 +272,12 @@ public class SafeByteStream {
         this.readPos = 0;
     }
 
-    public synchronized void reset() {
+    public void reset() {
         this.writePos = 0;
         this.readPos = 0;
     }
     
-    public synchronized void reBuild() {
+    public void reBuild() {
         this.buffer = new byte[this.initialBufferSize];
         this.writePos = 0;
         this.readPos = 0;
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.core;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Writes requests straight into a netty ByteBuf,
+ * bytes in [0x00 - 0x0f] are escaped when safe is true.
+ * Not thread safe, one instance is used by one encoder in the event loop.
+ * Strings in US-ASCII, ISO-8859-1 or UTF-8 are encoded without String.getBytes,
+ * into a scratch array reused by every call, then copied into out at once.
+ */
+public class SafeByteWriter {
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int KIND_OTHER = 0;
+	private static final int KIND_ASCII = 1;
+	private static final int KIND_LATIN1 = 2;
+	private static final int KIND_UTF8 = 3;
+
+	/**
+	 * chars encoded at a time, a char takes 3 bytes at most
+	 */
+	private static final int CHUNK = 8192;
+	private static final int MIN_SCRATCH = 256;
+	/**
+	 * written for an unmappable char, as String.getBytes does
+	 */
+	private static final byte REPLACEMENT = '?';
+
+	private final Charset charset;
+	private final int kind;
+	private byte[] scratch;
+	private ByteBuf out;
+
+	public SafeByteWriter(Charset charset) {
+		this(null, charset);
+	}
+
+	public SafeByteWriter(ByteBuf out, Charset charset) {
+		this.out = out;
+		this.charset = charset;
+
+		if (US_ASCII.equals(charset)) {
+			this.kind = KIND_ASCII;
+		} else if (ISO_8859_1.equals(charset)) {
+			this.kind = KIND_LATIN1;
+		} else if (UTF_8.equals(charset)) {
+			this.kind = KIND_UTF8;
+		} else {
+			this.kind = KIND_OTHER;
+		}
+	}
+
+	/**
+	 * write following bytes into out
+	 * @param out
+	 * @return
+	 */
+	public SafeByteWriter wrap(ByteBuf out) {
+		this.out = out;
+		return this;
+	}
+
+	public ByteBuf getBuffer() {
+		return out;
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	public void writeByte(byte b, boolean safe) {
+		if (safe && /*unsigned*/ (0xFF & b) < 0x10) {
+			out.writeByte(HSProto.UNSAFE_BYTE_MARKER);
+			out.writeByte(b ^ HSProto.UNSAFE_BYTE_MASK);
+		} else {
+			out.writeByte(b);
+		}
+	}
+
+	public void writeByte(byte b) {
+		out.writeByte(b);
+	}
+
+	public void writeBytes(final byte[] b, boolean safe) {
+		_write(b, 0, b.length, safe);
+	}
+
+	public void writeBytes(final byte[] b, final int offset, final int length, boolean safe) {
+		_write(b, offset, length, safe);
+	}
+
+	public void writeString(CharSequence str, boolean safe) {
+		if (kind == KIND_OTHER) {
+			final byte[] b = str.toString().getBytes(charset);
+			_write(b, 0, b.length, safe);
+			return;
+		}
+
+		final int len = str.length();
+		int from = 0;
+		int to;
+		int n;
+
+		while (from < len) {
+			to = Math.min(from + CHUNK, len);
+			if (to < len && Character.isHighSurrogate(str.charAt(to - 1))) {
+				to--; //keep a surrogate pair in one chunk
+			}
+			n = encode(str, from, to, safe); //may replace scratch, read it after
+			out.writeBytes(scratch, 0, n);
+			from = to;
+		}
+	}
+
+	public void writeStrings(List<String> strings, byte[] delimiter, boolean safe) {
+		int count = strings.size();
+
+		for (String str : strings) {
+			writeString(str, safe);
+			if (--count > 0) {
+				out.writeBytes(delimiter);
+			}
+		}
+	}
+
+	public void writeStrings(String[] strings, byte[] delimiter, boolean safe) {
+		int count = strings.length;
+
+		for (String str : strings) {
+			writeString(str, safe);
+			if (--count > 0) {
+				out.writeBytes(delimiter);
+			}
+		}
+	}
+
+	public void writeStrings(String[] strings, byte delimiter, boolean safe) {
+		int count = strings.length;
+
+		for (String str : strings) {
+			writeString(str, safe);
+			if (--count > 0) {
+				out.writeByte(delimiter);
+			}
+		}
+	}
+
+	/**
+	 * encode chars [from, to) into scratch, escaping them if safe is true,
+	 * only chars below 0x10 may be unsafe, a multi-byte sequence never is
+	 * @param str
+	 * @param from
+	 * @param to
+	 * @param safe
+	 * @return
+	 *  bytes in scratch
+	 */
+	private int encode(final CharSequence str, final int from, final int to, boolean safe) {
+		final int need = 3 * (to - from);
+		if (scratch == null || scratch.length < need) {
+			scratch = new byte[Math.max(need, MIN_SCRATCH)];
+		}
+
+		final byte[] b = scratch;
+		int n = 0;
+		char c;
+		char low;
+		int cp;
+
+		for (int i = from; i < to; i++) {
+			c = str.charAt(i);
+			if (c < 0x80) {
+				if (safe && c < 0x10) {
+					b[n++] = HSProto.UNSAFE_BYTE_MARKER;
+					b[n++] = (byte) (c ^ HSProto.UNSAFE_BYTE_MASK);
+				} else {
+					b[n++] = (byte) c;
+				}
+			} else if (kind == KIND_LATIN1 && c < 0x100) {
+				b[n++] = (byte) c;
+			} else if (kind != KIND_UTF8) {
+				if (Character.isHighSurrogate(c) && i + 1 < to
+						&& Character.isLowSurrogate(str.charAt(i + 1))) {
+					i++; //a pair is one unmappable char
+				}
+				b[n++] = REPLACEMENT;
+			} else if (c < 0x800) {
+				b[n++] = (byte) (0xC0 | (c >> 6));
+				b[n++] = (byte) (0x80 | (c & 0x3F));
+			} else if (!Character.isSurrogate(c)) {
+				b[n++] = (byte) (0xE0 | (c >> 12));
+				b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				b[n++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < to
+					&& Character.isLowSurrogate(low = str.charAt(i + 1))) {
+				cp = Character.toCodePoint(c, low);
+				b[n++] = (byte) (0xF0 | (cp >> 18));
+				b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				b[n++] = (byte) (0x80 | (cp & 0x3F));
+				i++;
+			} else {
+				b[n++] = REPLACEMENT; //unpaired surrogate
+			}
+		}
+		return n;
+	}
+
+	private void _write(final byte[] bytes, final int offset, final int length, boolean safe) {
+		if (!safe) {
+			out.writeBytes(bytes, offset, length);
+			return;
+		}
+
+		//copy clean spans in bulk, escape the unsafe bytes between them
+		final int end = offset + length;
+		int start = offset;
+		int i;
+
+		while ((i = HSProto.indexOfUnsafe(bytes, start, end)) < end) {
+			if (i > start) {
+				out.writeBytes(bytes, start, i - start);
+			}
+			out.writeByte(HSProto.UNSAFE_BYTE_MARKER);
+			out.writeByte(bytes[i] ^ HSProto.UNSAFE_BYTE_MASK);
+			start = i + 1;
+		}
+
+		if (end > start) {
+			out.writeBytes(bytes, start, end - start);
+		}
+	}
+}
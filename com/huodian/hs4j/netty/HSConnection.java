@@ -19,45 +19,141 @@
 package com.huodian.hs4j.netty;
 
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.nio.charset.Charset;
 import java.security.InvalidParameterException;
-import java.util.LinkedList;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.huodian.hs4j.HSException;
 import com.huodian.hs4j.HSManager;
 import com.huodian.hs4j.command.HSAuth;
 import com.huodian.hs4j.command.HSCommand;
+import com.huodian.hs4j.command.HSOpenIndex;
 import com.huodian.hs4j.core.HSIndexDescriptor;
-import com.huodian.hs4j.core.SafeByteStream;
+import com.huodian.hs4j.core.HSProto;
 import com.huodian.hs4j.result.HSResult;
 import com.huodian.hs4j.result.HSResultFuture;
 
 public class HSConnection {
+    private static final Logger LOG = LoggerFactory.getLogger(HSConnection.class.getName());
+    public static final long MIN_RECONNECT_DELAY = 100; //ms
+    public static final long MAX_RECONNECT_DELAY = 30000; //ms
+    
 	private final String host;
 	private final HSConnectionMode connectMode;
 	private final int readOnlyPort;
 	private final int readWritePort;
 	
     protected final Bootstrap bootstrap;
-    private Channel channel;
+    private static final String FLUSHER = "flusher";
+    
+    private final HSManager manager;
+    private final String secret;
+    private volatile Channel channel;
     private Charset charset;
-    private final LinkedList<HSResultFuture> pendingResults = new LinkedList<HSResultFuture>();
+    /**
+     * connected, and authenticated after reconnecting
+     */
+    private volatile boolean active = false;
+    private volatile boolean closed = false;
+    private HSConnectionMode currentMode;
+    private long reconnectDelay = MIN_RECONNECT_DELAY;
+    /**
+     * HSAuth and HSOpenIndex sent after reconnecting
+     */
+    private HSResultFuture replayFuture = null;
+    
+    private final ChannelFutureListener closeListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            onClosed(future.channel());
+        }
+    };
+    /**
+     * futures waiting for responses, in the order they were written.
+     * Offered and polled only in the event loop of the channel,
+     * other threads may only peek at it
+     */
+    private final ConcurrentLinkedQueue<HSResultFuture> pendingResults = new ConcurrentLinkedQueue<HSResultFuture>();
+    /**
+     * requests executed but not finished, include those not written yet
+     */
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    /**
+     * indexes opened on this connection, descriptor -> id on this connection.
+     * Descriptors have no equals, so they are compared by identity.
+     * Changed only in the event loop
+     */
+    private final ConcurrentHashMap<HSIndexDescriptor, String> openedIndexes
+        = new ConcurrentHashMap<HSIndexDescriptor, String>();
+    /**
+     * ids given to indexes on this connection, the smallest free one is given first,
+     * for the server keeps a table of every connection up to its biggest id.
+     * Only used in the event loop
+     */
+    private final BitSet usedIndexIds = new BitSet();
 	
     public static enum HSConnectionMode {
         READ_ONLY,
         READ_WRITE
     }
     
+    public static enum HSTransport {
+        /**
+         * java nio, available everywhere
+         */
+        NIO,
+        /**
+         * netty native epoll, only on linux,
+         * edge-triggered, less syscalls, TCP_QUICKACK
+         */
+        EPOLL,
+        /**
+         * netty native epoll over a unix domain socket,
+         * for clients on the same host as the server(or a local proxy),
+         * the host is the path of the socket file
+         */
+        DOMAIN_SOCKET
+    }
+    
+    /**
+     * replaced by the port of the connection mode in the path of
+     * a domain socket, so read-only and read-write can use different files,
+     * e.g. "/var/run/hs.{port}.sock"
+     */
+    public static final String PORT_PLACEHOLDER = "{port}";
+    
 	public HSConnection(String host, HSManager manager, Charset charset) throws TimeoutException, HSException {
 		this(host, manager, HSConnectionMode.READ_WRITE, 9998, 9999, charset);
 	}
@@ -68,52 +164,256 @@ public class HSConnection {
 	}
 
 	public HSConnection(String host, HSManager manager,
+	        HSConnectionMode connectMode, int readOnlyPort,
+	        int readWritePort, Charset charset) throws TimeoutException, HSException {
+		this(host, null, manager, connectMode, readOnlyPort, readWritePort, charset);
+	}
+
+	/**
+	 * @param host
+	 * @param secret
+	 *  sent by HSAuth after reconnecting, null if auth is not needed
+	 * @param manager
+	 * @param connectMode
+	 * @param readOnlyPort
+	 * @param readWritePort
+	 * @param charset
+	 * @throws TimeoutException
+	 * @throws HSException
+	 */
+	public HSConnection(String host, String secret, HSManager manager,
 	        HSConnectionMode connectMode, int readOnlyPort,
 	        int readWritePort, Charset charset) throws TimeoutException, HSException {
 		this.host = host;
+		this.secret = secret;
 		this.connectMode = connectMode;
 		this.readOnlyPort = readOnlyPort;
 		this.readWritePort = readWritePort;
 		this.charset = charset;
+		this.manager = manager;
 		
         bootstrap = new Bootstrap();
         bootstrap.group(manager.getWorkGroup());
-        bootstrap.channel(NioSocketChannel.class);
-        bootstrap.option(ChannelOption.SO_KEEPALIVE, true);
-        bootstrap.option(ChannelOption.TCP_NODELAY, true);
-        bootstrap.handler(new ChannelInitializer<SocketChannel>() {
+        switch(manager.getTransport()) {
+        case DOMAIN_SOCKET: //no tcp options
+            bootstrap.channel(EpollDomainSocketChannel.class);
+            break;
+        case EPOLL:
+            bootstrap.channel(EpollSocketChannel.class);
+            bootstrap.option(EpollChannelOption.TCP_QUICKACK, true);
+            bootstrap.option(ChannelOption.SO_KEEPALIVE, true);
+            bootstrap.option(ChannelOption.TCP_NODELAY, true);
+            break;
+        default:
+            bootstrap.channel(NioSocketChannel.class);
+            bootstrap.option(ChannelOption.SO_KEEPALIVE, true);
+            bootstrap.option(ChannelOption.TCP_NODELAY, true);
+        }
+        bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        bootstrap.handler(new ChannelInitializer<Channel>() {
             @Override
-            public void initChannel(SocketChannel ch) throws Exception {
+            public void initChannel(Channel ch) throws Exception {
                 ChannelPipeline pipeline = ch.pipeline();
 
                 pipeline.addLast("decoder", new HSDecoder(HSConnection.this));
+                if(HSConnection.this.manager.isWriteCoalescing()) {
+                    pipeline.addLast(FLUSHER, newFlusher());
+                }
+                pipeline.addLast("encoder", new HSEncoder(HSConnection.this, HSConnection.this.charset));
             }
         });
-        this.channel = connect(connectMode, manager);
+        //not connected here, call connect() or connectAsync()
 	}
 
+	/**
+	 * connect to the port of the connection mode, without waiting
+	 * @return
+	 */
+    public ChannelFuture connectAsync() {
+        return connectAsync(connectMode);
+    }
+    
+    public ChannelFuture connectAsync(HSConnectionMode mode) {
+        ChannelFuture channelFuture = bootstrap.connect(getRemoteAddress(mode));
+        
+        this.currentMode = mode;
+        this.channel = channelFuture.channel();
+        manager.getChannelGroup().add(this.channel);
+        
+        channelFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if(future.isSuccess()) {
+                    active = true;
+                    future.channel().closeFuture().addListener(closeListener);
+                }
+            }
+        });
+        
+        return channelFuture;
+    }
+    
+    /**
+     * fail all pending requests at once, and reconnect in background
+     * @param oldChannel
+     */
+    private void onClosed(Channel oldChannel) {
+        active = false;
+        failPending(new ClosedChannelException());
+        
+        if(closed || manager.isClosed()) {
+            return;
+        }
+        
+        LOG.info("Connection to {}:{} closed, reconnect it", getHost(), getPort(currentMode));
+        scheduleReconnect(oldChannel.eventLoop());
+    }
+    
+    /**
+     * only in the event loop
+     * @param cause
+     */
+    private void failPending(Exception cause) {
+        HSResultFuture resultSet;
+        
+        while((resultSet = pendingResults.poll()) != null) {
+            if(resultSet.fail(cause)) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * reconnect after a delay, doubled every time until MAX_RECONNECT_DELAY
+     * @param eventLoop
+     */
+    private void scheduleReconnect(EventLoop eventLoop) {
+        long delay = reconnectDelay;
+        reconnectDelay = Math.min(delay << 1, MAX_RECONNECT_DELAY);
+        
+        eventLoop.schedule(new Runnable() {
+            @Override
+            public void run() {
+                reconnect();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+    
+    private void reconnect() {
+        if(closed || manager.isClosed()) {
+            return;
+        }
+        
+        bootstrap.connect(getRemoteAddress(currentMode)).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                Channel ch = future.channel();
+                if(!future.isSuccess()) {
+                    LOG.debug("Fail to reconnect {}:{}", getHost(), getPort(currentMode));
+                    scheduleReconnect(ch.eventLoop());
+                    return;
+                }
+                
+                manager.getChannelGroup().add(ch);
+                ch.closeFuture().addListener(closeListener);
+                //requests of callers are written after the replay
+                channel = ch;
+                replay();
+            }
+        });
+    }
+    
+    /**
+     * auth and open all indexes opened before, pipelined in one request.
+     * The connection is active when the response of HSAuth is OK
+     */
+    private void replay() {
+        List<HSIndexDescriptor> indexes = new ArrayList<HSIndexDescriptor>(openedIndexes.keySet());
+        openedIndexes.clear(); //a new connection has no index on the server
+        usedIndexIds.clear();
+        
+        int offset = secret == null ? 0 : 1;
+        int num = indexes.size() + offset;
+        if(num == 0) {
+            onReplayed(null);
+            return;
+        }
+        
+        HSIndexDescriptor[] indexDescrs = new HSIndexDescriptor[num];
+        HSCommand[] cmds = new HSCommand[num];
+        if(secret != null) {
+            cmds[0] = new HSAuth(secret);
+        }
+        for(int i = offset; i < num; i++) {
+            indexDescrs[i] = indexes.get(i - offset);
+            cmds[i] = new HSOpenIndex();
+        }
+        
+        replayFuture = execute(indexDescrs, cmds);
+    }
+    
+    /**
+     * @param resultSet
+     *  null if nothing is replayed
+     */
+    private void onReplayed(HSResultFuture resultSet) {
+        replayFuture = null;
+        
+        if(resultSet != null) {
+            HSResult[] results = resultSet.getResults();
+            for(HSResult res : results) {
+                HSCommand cmd = res.getCommand();
+                if(cmd.getStatus() == HSProto.STATUS_OK) {
+                    continue;
+                }
+                
+                if(res.isOpenIndex()) {
+                    LOG.info("Fail to reopen index:{}, reason:{}", res.getIndexDescriptor(), cmd.getReason());
+                    indexClosed(res.getIndexDescriptor());
+                } else {
+                    LOG.warn("Fail to auth {}:{} after reconnecting, reason:{}",
+                             new Object[] {getHost(), getPort(currentMode), cmd.getReason()});
+                    channel.close(); //reconnect later
+                    return;
+                }
+            }
+        }
+        
+        reconnectDelay = MIN_RECONNECT_DELAY;
+        active = true;
+        LOG.info("Reconnected to {}:{}", getHost(), getPort(currentMode));
+    }
+    
     public Channel connect(HSConnectionMode mode, HSManager manager)
             throws TimeoutException, HSException {
-        InetSocketAddress addr = new InetSocketAddress(getHost(), getPort(mode)); 
-        ChannelFuture channelFuture = bootstrap.connect(addr);
+        ChannelFuture channelFuture = connectAsync(mode);
 
         if (!channelFuture.awaitUninterruptibly(manager.getConnectionTimeout())) {
-            throw new TimeoutException("Timeout to  connect " + addr.toString());
+            throw new TimeoutException("Timeout to  connect " + getHost() + ':' + getPort(mode));
         }
 
         if (!channelFuture.isSuccess()) {
-            throw new HSException("Fail to connection " + addr.toString());
+            throw new HSException("Fail to connection " + getHost() + ':' + getPort(mode));
         }
 
-        Channel channel = channelFuture.channel();
-        manager.getChannelGroup().add(channel);
-
-        return channel;
+        return channelFuture.channel();
     }
 	
 	public String getHost() {
 		return host;
 	}
+	
+	/**
+	 * @param mode
+	 * @return
+	 *  tcp address of host:port, or the domain socket of the path in host
+	 */
+	public SocketAddress getRemoteAddress(HSConnectionMode mode) {
+	    if(manager.getTransport() == HSTransport.DOMAIN_SOCKET) {
+	        return new DomainSocketAddress(host.replace(PORT_PLACEHOLDER, Integer.toString(getPort(mode))));
+	    }
+	    return new InetSocketAddress(host, getPort(mode));
+	}
 
 	public HSConnectionMode getConnectMode() {
 		return connectMode;
@@ -144,7 +444,7 @@ public class HSConnection {
         if(!(command instanceof HSAuth)) {
             throw new InvalidParameterException("Only HSAuth can be executed with it");
         }
-        return execute(null, new HSCommand[] {command});
+        return execute((HSIndexDescriptor)null, new HSCommand[] {command});
     }
     
     public HSResultFuture execute(HSIndexDescriptor indexDescr, HSCommand command) {
@@ -152,50 +452,346 @@ public class HSConnection {
     }
 
     public HSResultFuture execute(HSIndexDescriptor indexDescr, HSCommand[] commands) {
+        return execute(indexDescr, commands, manager.getRequestTimeout());
+    }
+    
+    /**
+     * @param indexDescr
+     * @param commands
+     * @param timeout
+     *  milli-seconds, <= 0 means no deadline
+     * @return
+     */
+    public HSResultFuture execute(HSIndexDescriptor indexDescr, HSCommand[] commands, long timeout) {
         int size = commands.length;
-        SafeByteStream packet = new SafeByteStream(size << 9, size << 8, charset);
+        if(size == 0) {
+            throw new InvalidParameterException("commands can't be empty");
+        }
         HSResult[] resultSet = new HSResult[size];
         int i = 0;
         
         for (HSCommand cmd : commands) {
             resultSet[i++] = new HSResult(indexDescr, cmd, charset);
-            cmd.encode(indexDescr, packet);
         }
 
-        HSResultFuture resultFuture = new HSResultFuture(resultSet);
-        synchronized(pendingResults) {
-            pendingResults.addFirst(resultFuture);
-            channel.writeAndFlush(packet.copy()); //must flush
+        return send(resultSet, timeout);
+    }
+    
+    /**
+     * pipeline commands on different indexes in one request
+     * @param indexDescrs
+     *  index of every command
+     * @param commands
+     * @return
+     */
+    public HSResultFuture execute(HSIndexDescriptor[] indexDescrs, HSCommand[] commands) {
+        return execute(indexDescrs, commands, manager.getRequestTimeout());
+    }
+    
+    public HSResultFuture execute(HSIndexDescriptor[] indexDescrs, HSCommand[] commands, long timeout) {
+        int size = commands.length;
+        if(size == 0) {
+            throw new InvalidParameterException("commands can't be empty");
+        }
+        if(indexDescrs.length != size) {
+            throw new InvalidParameterException("Every command must have its index descriptor");
+        }
+        
+        HSResult[] resultSet = new HSResult[size];
+        for (int i = 0; i < size; i++) {
+            resultSet[i] = new HSResult(indexDescrs[i], commands[i], charset);
+        }
+
+        return send(resultSet, timeout);
+    }
+    
+    private HSResultFuture send(HSResult[] resultSet, final long timeout) {
+        final HSResultFuture resultFuture = new HSResultFuture(resultSet, timeout);
+        final Channel ch = channel;
+        inFlight.incrementAndGet();
+        
+        if(timeout > 0) {
+            final Runnable expire = new Runnable() {
+                @Override
+                public void run() {
+                    if(resultFuture.fail(new TimeoutException("request reset by timeout(" + timeout + "ms)"))) {
+                        inFlight.decrementAndGet();
+                    }
+                }
+            };
+            
+            try {
+                //still pending after it expires, the response has to be matched
+                resultFuture.setTimer(manager.getTimer().newTimeout(new TimerTask() {
+                    @Override
+                    public void run(Timeout t) throws Exception {
+                        //fail in the event loop as other failures, listeners are never called by the timer
+                        try {
+                            ch.eventLoop().execute(expire);
+                        } catch(RejectedExecutionException e) {
+                            expire.run(); //event loop shut down
+                        }
+                    }
+                }, timeout, TimeUnit.MILLISECONDS));
+            } catch(IllegalStateException e) { //timer stopped by HSManager.close()
+                inFlight.decrementAndGet();
+                throw new IllegalStateException("HSManager is closed", e);
+            }
         }
+        
+        //encoded and enqueued by HSEncoder in the event loop,
+        //so the order in pendingResults is the order on the wire
+        //the flush is delayed by the flusher when write coalescing is enabled
+        ChannelFuture writeFuture = ch.writeAndFlush(resultFuture);
+        
+        writeFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if(!future.isSuccess() && resultFuture.fail(future.cause())) {
+                    inFlight.decrementAndGet();
+                }
+            }
+        });
 
         return resultFuture;
     }
+    
+    /**
+     * called by the encoder after a request is encoded,
+     * only in the event loop
+     * @param resultFuture
+     */
+    void addPending(HSResultFuture resultFuture) {
+        pendingResults.offer(resultFuture);
+    }
+    
+    /**
+     * called by the encoder instead of writing a request expired
+     * before it is written, only in the event loop
+     * @param resultFuture
+     */
+    void dropExpired(HSResultFuture resultFuture) {
+        LOG.debug("Drop expired request on {}:{}", getHost(), getPort(currentMode));
+        if(resultFuture.fail(new TimeoutException("request expired before written"))) {
+            inFlight.decrementAndGet();
+        }
+    }
 
-    public synchronized HSResult getNextResult() {
-        if(pendingResults.size() <= 0) {
+    /**
+     * called by the decoder at the beginning of a response,
+     * only in the event loop
+     * @return
+     *  result the response belongs to, null if nothing is pending
+     */
+    public HSResult getNextResult() {
+        HSResultFuture resultSet;
+        
+        //a ready head expects no more response, never let it block the queue
+        while((resultSet = pendingResults.peek()) != null && resultSet.isReady()) {
+            finishHead(resultSet);
+        }
+        if(resultSet == null) {
             return null;
         }
         
-        HSResultFuture resultSet = pendingResults.getLast();
-        if(resultSet.isReady()) {
-            if(pendingResults.size() <= 0) {
-                return null;
+        return resultSet.getResult();
+    }
+    
+    /**
+     * called by the decoder at the end of a response,
+     * only in the event loop
+     * @param result
+     *  result returned by getNextResult
+     */
+    public void finishResult(HSResult result) {
+        if(result == null) {
+            return;
+        }
+        result.complete(); //before the whole request
+        
+        HSResultFuture resultSet = pendingResults.peek();
+        if(resultSet != null && resultSet.isReady()) {
+            finishHead(resultSet);
+        }
+    }
+    
+    /**
+     * remove the head of pendingResults, all its responses are received
+     * @param resultSet
+     */
+    private void finishHead(HSResultFuture resultSet) {
+        pendingResults.poll();
+        checkOpenResults(resultSet);
+        if(resultSet == replayFuture) {
+            onReplayed(resultSet);
+        }
+        if(resultSet.finish()) {
+            inFlight.decrementAndGet();
+        }
+    }
+    
+    /**
+     * called by the encoder instead of enqueuing a request without any command,
+     * no response will come for it, only in the event loop
+     * @param resultFuture
+     */
+    void finishEmpty(HSResultFuture resultFuture) {
+        if(resultFuture.finish()) {
+            inFlight.decrementAndGet();
+        }
+    }
+    
+    /**
+     * forget indexes failed to be opened, by the connection itself
+     * or explicitly by HSOpenIndex in the request,
+     * so they will be opened again next time
+     * @param resultSet
+     */
+    private void checkOpenResults(HSResultFuture resultSet) {
+        for(HSResult res : resultSet.getOpenResults()) {
+            checkOpenResult(res);
+        }
+        for(HSResult res : resultSet.getResults()) {
+            if(res.isOpenIndex()) {
+                checkOpenResult(res);
             }
-            pendingResults.removeLast();
-            
-            resultSet.finish();
+        }
+    }
+    
+    private void checkOpenResult(HSResult res) {
+        HSCommand cmd = res.getCommand();
+        if(res.getCause() != null || cmd.getStatus() != HSProto.STATUS_OK) {
+            LOG.info("Fail to open index:{}, reason:{}", res.getIndexDescriptor(), cmd.getReason());
+            indexClosed(res.getIndexDescriptor());
+        }
+    }
+    
+    /**
+     * @param indexDescr
+     * @return
+     *  true if the same descriptor has been opened on this connection
+     */
+    public boolean isIndexOpened(HSIndexDescriptor indexDescr) {
+        return openedIndexes.containsKey(indexDescr);
+    }
+    
+    /**
+     * @param indexDescr
+     * @return
+     *  id of the index on this connection, null if it is not opened
+     */
+    public String getIndexId(HSIndexDescriptor indexDescr) {
+        return openedIndexes.get(indexDescr);
+    }
+    
+    /**
+     * reserve the smallest free id, only in the event loop
+     * @return
+     */
+    String allocIndexId() {
+        int id = usedIndexIds.nextClearBit(0);
+        usedIndexIds.set(id);
+        return String.valueOf(id);
+    }
+    
+    /**
+     * give back an id not registered by indexOpened, only in the event loop
+     * @param indexId
+     */
+    void releaseIndexId(String indexId) {
+        usedIndexIds.clear(Integer.parseInt(indexId));
+    }
+    
+    /**
+     * called when HSOpenIndex is sent, only in the event loop
+     * @param indexDescr
+     * @param indexId
+     *  reserved by allocIndexId
+     */
+    void indexOpened(HSIndexDescriptor indexDescr, String indexId) {
+        String old = openedIndexes.put(indexDescr, indexId);
+        if(old != null && !old.equals(indexId)) {
+            releaseIndexId(old);
+        }
+    }
+    
+    void indexClosed(HSIndexDescriptor indexDescr) {
+        String indexId = openedIndexes.remove(indexDescr);
+        if(indexId != null) {
+            releaseIndexId(indexId);
+        }
+    }
+    
+    public Collection<HSIndexDescriptor> getOpenedIndexes() {
+        return openedIndexes.keySet();
+    }
+    
+    /**
+     * number of requests executed but not finished,
+     * used to select the least loaded connection
+     * @return
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
 
-            if(pendingResults.size() <= 0) {
-                return null;
-            }
-            
-            resultSet = pendingResults.peek();
+    /**
+     * install or remove the flusher on the current channel, in its event loop,
+     * a channel connected later checks the manager in initChannel
+     * @param enabled
+     */
+    public void setWriteCoalescing(final boolean enabled) {
+        final Channel ch = channel;
+        if(ch == null) {
+            return;
         }
         
-        return resultSet.getResult();
+        ch.eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                ChannelPipeline pipeline = ch.pipeline();
+                if(pipeline.get("encoder") == null) {
+                    return; //closed
+                }
+                
+                if(!enabled) {
+                    if(pipeline.get(FLUSHER) != null) {
+                        pipeline.remove(FLUSHER); //flushes what it holds
+                    }
+                } else if(pipeline.get(FLUSHER) != null) {
+                    pipeline.replace(FLUSHER, FLUSHER, newFlusher()); //maybe another explicitFlushAfterFlushes
+                } else {
+                    pipeline.addBefore("encoder", FLUSHER, newFlusher());
+                }
+            }
+        });
+    }
+    
+    /**
+     * flushes are done at the end of the current read, or in the next event-loop tick,
+     * and at once after explicitFlushAfterFlushes flushes
+     * @return
+     */
+    private FlushConsolidationHandler newFlusher() {
+        return new FlushConsolidationHandler(manager.getExplicitFlushAfterFlushes(), true);
     }
 
+    /**
+     * connected and authenticated,
+     * the selector skips the connection when it is not active
+     * @return
+     */
+    public boolean isActive() {
+        Channel ch = channel;
+        return active && ch != null && ch.isActive();
+    }
+    
+    /**
+     * close it, and never reconnect
+     * @return
+     */
     public ChannelFuture close() {
+        closed = true;
         return channel.close();
     }
 }
\ No newline at end of file
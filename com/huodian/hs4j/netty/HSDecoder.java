@@ -39,23 +39,37 @@ public class HSDecoder extends ByteToMessageDecoder {
     
 	@Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf buffer, List<Object> out) throws Exception {
-        byte b;
+        int len;
 
-        int len = buffer.readableBytes();
-        if(curResult == null) {
-            curResult = connection.getNextResult();
+        while((len = buffer.bytesBefore(HSProto.PACKET_DELIMITER)) >= 0) {
+            if(curResult == null) {
+                curResult = connection.getNextResult();
+            }
+            saveBytes(buffer, len);
+            buffer.skipBytes(1); //skip delimiter
+            
+            connection.finishResult(curResult);
+            curResult = null;
         }
-
-        for(int i = 0; i < len; i++) {
-            b = buffer.readByte();
-            if (b == HSProto.PACKET_DELIMITER) {
+        
+        //partial response, keep it in current result until the delimiter comes
+        len = buffer.readableBytes();
+        if(len > 0) {
+            if(curResult == null) {
                 curResult = connection.getNextResult();
-            } else if(curResult != null) {
-                //buffer it, and decode it in user-thread when call getCommand()
-                curResult.saveByte(b); 
             }
+            saveBytes(buffer, len);
         }
 		
 		//needn't call buffer.release
 	}
+	
+	private void saveBytes(ByteBuf buffer, int len) {
+	    if(curResult != null) {
+	        //buffer it, and decode it in user-thread when call getCommand()
+	        curResult.saveBytes(buffer, len);
+	    } else {
+	        buffer.skipBytes(len);
+	    }
+	}
 }
\ No newline at end of file
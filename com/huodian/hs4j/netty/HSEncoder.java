@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.huodian.hs4j.command.HSOpenIndex;
+import com.huodian.hs4j.core.HSIndexDescriptor;
+import com.huodian.hs4j.core.SafeByteWriter;
+import com.huodian.hs4j.result.HSResult;
+import com.huodian.hs4j.result.HSResultFuture;
+
+/**
+ * Encodes all commands of a HSResultFuture into the buffer
+ * allocated by the channel's allocator(pooled, direct),
+ * then appends the future to the pending queue of the connection.
+ * Indexes not opened on the connection yet are opened in the same request,
+ * HSOpenIndex commands are prepended before the commands using them.
+ */
+public class HSEncoder extends MessageToByteEncoder<HSResultFuture> {
+    private final HSConnection connection;
+    private final SafeByteWriter writer;
+    private final Charset charset;
+    /**
+     * reused in every encode, only touched in the event loop
+     */
+    private final List<HSIndexDescriptor> opening = new ArrayList<HSIndexDescriptor>();
+    /**
+     * ids reserved for indexes opened in this request and not opened on the connection
+     */
+    private final Map<HSIndexDescriptor, String> newIds = new IdentityHashMap<HSIndexDescriptor, String>();
+    
+    public HSEncoder(HSConnection connection, Charset charset) {
+        if(connection == null) {
+            throw new NullPointerException("connection is null");
+        }
+        
+        this.connection = connection;
+        this.writer = new SafeByteWriter(charset);
+        this.charset = charset;
+    }
+    
+    @Override
+    protected void encode(ChannelHandlerContext ctx, HSResultFuture msg, ByteBuf out) throws Exception {
+        if(msg.isDone() || msg.isExpired()) { //nobody waits for it, needn't send
+            connection.dropExpired(msg);
+            return;
+        }
+        
+        HSResult[] results = msg.getResults();
+        HSResult[] openResults = null;
+        
+        opening.clear();
+        newIds.clear();
+        writer.wrap(out);
+        boolean encoded = false;
+        try {
+            findUnopenedIndexes(results);
+            
+            if(!opening.isEmpty()) {
+                openResults = new HSResult[opening.size()];
+                for(int i = 0; i < openResults.length; i++) {
+                    openResults[i] = new HSResult(opening.get(i), new HSOpenIndex(), charset);
+                    openResults[i].encode(writer, newIds.get(opening.get(i)));
+                }
+            }
+            
+            for(HSResult result : results) {
+                result.encode(writer, indexIdOf(result.getIndexDescriptor()));
+            }
+            encoded = true;
+        } finally {
+            writer.wrap(null);
+            if(!encoded) {
+                for(String indexId : newIds.values()) {
+                    connection.releaseIndexId(indexId);
+                }
+            }
+        }
+        
+        //only when all commands are encoded, or responses will mismatch
+        if(openResults != null) {
+            msg.setOpenResults(openResults);
+        }
+        for(Map.Entry<HSIndexDescriptor, String> e : newIds.entrySet()) {
+            connection.indexOpened(e.getKey(), e.getValue());
+        }
+        newIds.clear(); //never hold descriptors
+        if(msg.isReady()) { //nothing written, no response will come
+            connection.finishEmpty(msg);
+            return;
+        }
+        connection.addPending(msg);
+    }
+    
+    /**
+     * reserve ids of indexes not opened on the connection,
+     * opening: indexes used in this request but not opened, by the connection or
+     * explicitly by HSOpenIndex in this request, HSOpenIndex is prepended for them
+     * @param results
+     */
+    private void findUnopenedIndexes(HSResult[] results) {
+        HSIndexDescriptor indexDescr;
+        
+        for(HSResult result : results) {
+            indexDescr = result.getIndexDescriptor();
+            if(result.isOpenIndex() && !connection.isIndexOpened(indexDescr)
+               && !newIds.containsKey(indexDescr)) {
+                newIds.put(indexDescr, connection.allocIndexId());
+            }
+        }
+        
+        for(HSResult result : results) {
+            indexDescr = result.getIndexDescriptor();
+            if(indexDescr == null || connection.isIndexOpened(indexDescr)
+               || newIds.containsKey(indexDescr)) {
+                continue;
+            }
+            newIds.put(indexDescr, connection.allocIndexId());
+            opening.add(indexDescr);
+        }
+    }
+    
+    /**
+     * @param indexDescr
+     * @return
+     *  id of the index on the connection, null for commands without index
+     */
+    private String indexIdOf(HSIndexDescriptor indexDescr) {
+        if(indexDescr == null) {
+            return null;
+        }
+        
+        String indexId = newIds.get(indexDescr);
+        return indexId != null ? indexId : connection.getIndexId(indexDescr);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.reactive;
+
+import java.security.InvalidParameterException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.huodian.hs4j.HSException;
+import com.huodian.hs4j.HSManager;
+import com.huodian.hs4j.command.HSCommand;
+import com.huodian.hs4j.command.HSFind;
+import com.huodian.hs4j.core.HSIndexDescriptor;
+import com.huodian.hs4j.core.HSProto;
+import com.huodian.hs4j.core.ResultRow;
+import com.huodian.hs4j.core.ResultSetImpl;
+import com.huodian.hs4j.result.HSResult;
+import com.huodian.hs4j.result.HSResultFuture;
+import com.huodian.hs4j.result.HSResultListener;
+
+/**
+ * Publish rows of HSFind commands with backpressure.
+ * Every HSFind is executed as a request of its own, sent only when
+ * the rows buffered can not satisfy the demand, and at most maxInFlight
+ * of them are in flight, so at most demand + maxInFlight responses are buffered.
+ * Rows of a response are published in the order of responses.
+ * Only one subscriber is supported.
+ */
+public class HSRowPublisher implements Publisher<ResultRow> {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1;
+    
+    private final HSManager manager;
+    private final HSIndexDescriptor indexDescr;
+    private final HSFind[] finds;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+    public HSRowPublisher(HSManager manager, HSIndexDescriptor indexDescr, HSFind[] finds, Executor executor) {
+        this(manager, indexDescr, finds, executor, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param manager
+     * @param indexDescr
+     * @param finds
+     * @param executor
+     *  decode responses in it, null to use the event loop
+     * @param maxInFlight
+     *  finds sent but not answered at most
+     */
+    public HSRowPublisher(HSManager manager, HSIndexDescriptor indexDescr, HSFind[] finds,
+            Executor executor, int maxInFlight) {
+        if(maxInFlight <= 0) {
+            throw new InvalidParameterException("maxInFlight must be big than 0");
+        }
+        
+        this.manager = manager;
+        this.indexDescr = indexDescr;
+        this.finds = finds;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ResultRow> subscriber) {
+        if(subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+
+        if(!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                public void request(long n) {}
+                public void cancel() {}
+            });
+            subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+            return;
+        }
+
+        RowSubscription subscription = new RowSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain(); //nothing to find
+    }
+
+    private class RowSubscription implements Subscription, HSResultListener {
+        private final Subscriber<? super ResultRow> subscriber;
+        /**
+         * decoded responses, in the order they are received
+         */
+        private final Queue<ResultSetImpl> results = new ConcurrentLinkedQueue<ResultSetImpl>();
+        private final AtomicLong requested = new AtomicLong(0);
+        /**
+         * rows in results and current not published yet
+         */
+        private final AtomicLong buffered = new AtomicLong(0);
+        private final AtomicInteger inFlight = new AtomicInteger(0);
+        /**
+         * only one thread calls the subscriber or sends finds,
+         * the others increase it and leave
+         */
+        private final AtomicInteger wip = new AtomicInteger(0);
+        private volatile Throwable error;
+        private volatile boolean cancelled = false;
+        
+        //only used in drain
+        private boolean terminated = false;
+        private int next = 0;
+        private ResultSetImpl current;
+        private int currentRow;
+
+        RowSubscription(Subscriber<? super ResultRow> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void operationComplete(HSResultFuture future) {
+            HSResult result = future.getResults()[0];
+
+            if(result.getCause() != null) {
+                onFailure(result.getCause());
+                return;
+            }
+
+            HSFind find = (HSFind)result.getCommand();
+            if(find.getStatus() != HSProto.STATUS_OK) {
+                onFailure(new HSException("Fail to find, reason:" + find.getReason()));
+                return;
+            }
+
+            ResultSetImpl resultSet = (ResultSetImpl)find.getResult();
+            if(resultSet != null && resultSet.getRowCount() > 0 && !cancelled) {
+                buffered.addAndGet(resultSet.getRowCount());
+                results.offer(resultSet);
+            }
+
+            inFlight.decrementAndGet(); //after offer, drain sees the rows once it sees the decrement
+            drain();
+        }
+
+        private void onFailure(Throwable cause) {
+            if(error == null) {
+                error = cause;
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                onFailure(new IllegalArgumentException("request must be big than 0, but " + n));
+                return;
+            }
+
+            long r, u;
+            do {
+                r = requested.get();
+                u = r + n;
+                if(u < 0) { //overflow, unbounded
+                    u = Long.MAX_VALUE;
+                }
+            } while(!requested.compareAndSet(r, u));
+
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        void drain() {
+            if(wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            for(;;) {
+                if(terminated || cancelled) {
+                    results.clear();
+                    current = null;
+                } else {
+                    emit();
+                    if(!terminated) {
+                        sendFinds();
+                    }
+                }
+
+                missed = wip.addAndGet(-missed);
+                if(missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * send finds while the rows buffered are less than the demand,
+         * a response completed meanwhile calls drain again
+         */
+        private void sendFinds() {
+            while(next < finds.length && !cancelled && error == null
+                    && inFlight.get() < maxInFlight
+                    && buffered.get() < requested.get()) {
+                inFlight.incrementAndGet();
+                try {
+                    manager.execute(indexDescr, new HSCommand[]{finds[next++]}).addListener(this, executor);
+                } catch(RuntimeException e) {
+                    onFailure(e);
+                    return;
+                }
+            }
+        }
+
+        private void emit() {
+            long r = requested.get();
+            long e = 0;
+
+            for(;;) {
+                if(cancelled) {
+                    return;
+                }
+
+                if(error != null) {
+                    terminated = true;
+                    results.clear();
+                    current = null;
+                    subscriber.onError(error);
+                    return;
+                }
+
+                if(current == null) {
+                    //read inFlight before polling, a response offered before its decrement is not missed
+                    boolean done = next == finds.length && inFlight.get() == 0;
+                    current = results.poll();
+                    currentRow = 0;
+                    if(current == null) {
+                        if(done) {
+                            terminated = true;
+                            subscriber.onComplete();
+                        }
+                        break;
+                    }
+                }
+
+                if(e == r) {
+                    break;
+                }
+
+                subscriber.onNext(current.getRow(currentRow++));
+                buffered.decrementAndGet();
+                e++;
+                if(currentRow == current.getRowCount()) {
+                    current = null;
+                }
+            }
+
+            if(e != 0 && r != Long.MAX_VALUE) {
+                requested.addAndGet(-e);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.result;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.huodian.hs4j.core.HSProto;
+
+/**
+ * Combined future of HSOpenIndex requests pipelined on all connections,
+ * one HSResultFuture per connection, one HSResult per index descriptor.
+ */
+public class HSOpenIndexFuture {
+    private final HSResultFuture[] futures;
+    
+    public HSOpenIndexFuture(HSResultFuture[] futures) {
+        this.futures = futures;
+    }
+    
+    public boolean isDone() {
+        for(HSResultFuture future : futures) {
+            if(!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * wait all connections, timeout is shared by all of them
+     * @param timeout
+     *  milli-seconds
+     * @return
+     *  results of every connection, in the order of connections
+     */
+    public HSResult[][] get(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        HSResult[][] results = new HSResult[futures.length][];
+        
+        for(int i = 0; i < futures.length; i++) {
+            results[i] = futures[i].get(Math.max(0, deadline - System.currentTimeMillis()));
+        }
+        
+        return results;
+    }
+    
+    /**
+     * wait all connections, and collect failed results
+     * @param timeout
+     *  milli-seconds
+     * @return
+     *  connection index(from 0) -> failed results on it,
+     *  reason is in getCause() or getCommand().getReason(),
+     *  empty if all succeeded
+     */
+    public Map<Integer, List<HSResult>> getFailures(long timeout) {
+        HSResult[][] results = get(timeout);
+        Map<Integer, List<HSResult>> failures = new TreeMap<Integer, List<HSResult>>();
+        
+        for(int i = 0; i < results.length; i++) {
+            List<HSResult> failed = null;
+            for(HSResult res : results[i]) {
+                if(res.getCause() == null && res.getCommand().getStatus() == HSProto.STATUS_OK) {
+                    continue;
+                }
+                
+                if(failed == null) {
+                    failed = new ArrayList<HSResult>();
+                    failures.put(i, failed);
+                }
+                failed.add(res);
+            }
+        }
+        
+        return failures;
+    }
+}
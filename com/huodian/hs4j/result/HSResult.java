@@ -18,24 +18,53 @@
 
 package com.huodian.hs4j.result;
 
+import io.netty.buffer.ByteBuf;
+
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.huodian.hs4j.command.HSCommand;
+import com.huodian.hs4j.command.HSOpenIndex;
 import com.huodian.hs4j.core.HSIndexDescriptor;
 import com.huodian.hs4j.core.SafeByteStream;
+import com.huodian.hs4j.core.SafeByteWriter;
 
 public class HSResult {
-	private Exception cause;
+    private static final Logger LOG = LoggerFactory.getLogger(HSResult.class.getName());
+    
+	private volatile Exception cause;
 
 	private final HSIndexDescriptor indexDescr;
 	private final HSCommand command;
-    private final SafeByteStream buff;
+    private static final int MIN_BUFFER_SIZE = 64;
+    private static final int BUFFER_STEP = 1024;
+    
+    private final Charset charset;
+    /**
+     * created by the first bytes of the response,
+     * most responses of writes are only a few bytes
+     */
+    private SafeByteStream buff;
     private boolean needDecod = true;
+    /**
+     * response received or failed, guarded by this
+     */
+    private volatile boolean done = false;
+    /**
+     * listeners and their executors, guarded by this, null after notified
+     */
+    private List<Object> listeners;
+    private int waiters = 0;
 
 	public HSResult(HSIndexDescriptor indexDescr, HSCommand command, Charset charset) {
 		this.indexDescr = indexDescr;
 		this.command = command;
-        this.buff = new SafeByteStream(1024, 1024, charset);
+        this.charset = charset;
 	}
 
 	public void setCause(Exception cause) {
@@ -49,17 +78,196 @@ public class HSResult {
 	public HSCommand getCommand() {
 	    if(needDecod) {
 	        needDecod = false;
-	        command.decode(this.buff);
+	        command.decode(this.buff != null ? this.buff : new SafeByteStream(0, BUFFER_STEP, charset));
 	    }
 	    return command;
 	}
 
+	/**
+	 * encode the command of this result into a request
+	 * @param output
+	 * @param indexId
+	 *  id of the index on the connection, null if the command has no index
+	 */
+	public void encode(SafeByteWriter output, String indexId) {
+	    command.encode(indexDescr, indexId, output);
+	}
+	
+	/**
+	 * without decoding the response
+	 * @return
+	 */
+	public boolean isOpenIndex() {
+	    return command instanceof HSOpenIndex;
+	}
+	
+	/**
+	 * response received or failed
+	 * @return
+	 */
+	public boolean isDone() {
+	    return done;
+	}
+	
+	/**
+	 * wait for the response of this command only,
+	 * the other commands of the request may be still pending
+	 * @param timeout
+	 *  milli-seconds
+	 * @return
+	 *  false if timeout
+	 */
+	public boolean await(long timeout) {
+	    if(done) {
+	        return true;
+	    }
+	    
+	    long deadline = System.currentTimeMillis() + timeout;
+	    long left = timeout;
+	    synchronized(this) {
+	        waiters++;
+	        try {
+	            while(!done && left > 0) {
+	                wait(left);
+	                left = deadline - System.currentTimeMillis();
+	            }
+	        } catch(InterruptedException e) {
+	            Thread.currentThread().interrupt();
+	        } finally {
+	            waiters--;
+	        }
+	        return done;
+	    }
+	}
+	
+	/**
+	 * run the listener when the response of this command is received,
+	 * in the event loop, or in the caller if it is done
+	 * @param listener
+	 * @return
+	 */
+	public HSResult addListener(HSCommandListener listener) {
+	    return addListener(listener, null);
+	}
+	
+	/**
+	 * @param listener
+	 * @param executor
+	 *  run the listener in it, null to run in the event loop
+	 * @return
+	 */
+	public HSResult addListener(HSCommandListener listener, Executor executor) {
+	    if(listener == null) {
+	        throw new NullPointerException("listener");
+	    }
+	    
+	    synchronized(this) {
+	        if(!done) {
+	            if(listeners == null) {
+	                listeners = new ArrayList<Object>(2);
+	            }
+	            listeners.add(listener);
+	            listeners.add(executor);
+	            return this;
+	        }
+	    }
+	    
+	    notifyListener(listener, executor);
+	    return this;
+	}
+	
+	/**
+	 * the response is received, called by the connection in the event loop
+	 * @return
+	 *  false if it has been done before
+	 */
+	public boolean complete() {
+	    return complete(null);
+	}
+	
+	/**
+	 * set the cause if the response has not been received
+	 * @param cause
+	 * @return
+	 *  false if it has been done before
+	 */
+	public boolean fail(Exception cause) {
+	    return complete(cause);
+	}
+	
+	private boolean complete(Exception cause) {
+	    List<Object> list;
+	    synchronized(this) {
+	        if(done) {
+	            return false;
+	        }
+	        if(cause != null) {
+	            this.cause = cause;
+	        }
+	        done = true;
+	        list = listeners;
+	        listeners = null;
+	        if(waiters > 0) {
+	            notifyAll();
+	        }
+	    }
+	    
+	    if(list != null) {
+	        for(int i = 0; i < list.size(); i += 2) {
+	            notifyListener((HSCommandListener)list.get(i), (Executor)list.get(i + 1));
+	        }
+	    }
+	    return true;
+	}
+	
+	private void notifyListener(final HSCommandListener listener, Executor executor) {
+	    if(executor == null) {
+	        invokeListener(listener);
+	        return;
+	    }
+	    
+	    try {
+	        executor.execute(new Runnable() {
+	            @Override
+	            public void run() {
+	                invokeListener(listener);
+	            }
+	        });
+	    } catch(Throwable t) {
+	        LOG.warn("Fail to submit the listener of result", t);
+	    }
+	}
+	
+	private void invokeListener(HSCommandListener listener) {
+	    try {
+	        listener.commandComplete(this);
+	    } catch(Throwable t) {
+	        LOG.warn("Listener of result throws an exception", t);
+	    }
+	}
+	
 	public HSIndexDescriptor getIndexDescriptor() {
 	    return indexDescr;
 	}
 	
+    private SafeByteStream buffer(int length) {
+        if(this.buff == null) {
+            this.buff = new SafeByteStream(Math.max(length, MIN_BUFFER_SIZE), BUFFER_STEP, charset);
+        }
+        return this.buff;
+    }
+    
     public void saveByte(byte b) {
-        this.buff.writeByte(b);
+        buffer(1).writeByte(b);
+    }
+    
+    /**
+     * copy length bytes from buf in bulk
+     * @param buf
+     * @param length
+     */
+    public void saveBytes(ByteBuf buf, int length) {
+        buffer(length).writeBytes(buf, length);
     }
 	
 	@Override
@@ -18,28 +18,78 @@
 
 package com.huodian.hs4j.result;
 
+import io.netty.util.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Results of one request,
+ * wait for them by get(), or be called back by addListener().
+ * Every HSResult is also completed on its own as soon as its response
+ * is received, see HSResult.addListener()
+ */
 public class HSResultFuture {
     private static final Logger LOG = LoggerFactory.getLogger(HSResultFuture.class.getName());
     private static long DEFAULT_TIMEOUT = 5000;
     
+	private static final HSResult[] NO_RESULTS = new HSResult[0];
+	
 	private final HSResult[] resultSet;
 	private final int taskNum;
-	private int okNum = 0;
+	/**
+	 * HSOpenIndex prepended by the connection, invisible to the caller,
+	 * their responses come before those of resultSet
+	 */
+	private HSResult[] openResults = NO_RESULTS;
+	private volatile int openNum = 0;
+	private volatile int okNum = 0; //only changed in the event loop
 	private final CountDownLatch counter;
+	private final AtomicBoolean finished = new AtomicBoolean(false);
+	/**
+	 * absolute time in milli-seconds, 0 means no deadline
+	 */
+	private final long deadline;
+	private volatile Timeout timer;
+	/**
+	 * listeners and their executors(null to run in the caller of finish),
+	 * guarded by this, null after they are notified
+	 */
+	private List<Object> listeners;
 
 	public HSResultFuture(HSResult[] resultSet) {
+	    this(resultSet, 0);
+	}
+	
+	/**
+	 * @param resultSet
+	 * @param timeout
+	 *  milli-seconds from now, <= 0 means no deadline
+	 */
+	public HSResultFuture(HSResult[] resultSet, long timeout) {
 		this.resultSet = resultSet;
 		this.taskNum = resultSet.length;
 		this.counter = new CountDownLatch(1);
+		this.deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
 	}
 
+	/**
+	 * wait until the deadline of the request,
+	 * or the default timeout if it has no deadline
+	 * @return
+	 */
 	public HSResult[] get() {
+	    if(deadline > 0) {
+	        return get(Math.max(0, deadline - System.currentTimeMillis()));
+	    }
 		return get(DEFAULT_TIMEOUT);
 	}
 
@@ -57,33 +107,212 @@ public class HSResultFuture {
 		
 		if(!isReady()) {
 		    Exception cause = new TimeoutException("request reset by timeout");
-		    for(int i = okNum; i < taskNum; i++) {
-		        resultSet[i].setCause(cause);
+		    for(int i = firstPending(); i < taskNum; i++) {
+		        if(!resultSet[i].isDone() && resultSet[i].getCause() == null) {
+		            resultSet[i].setCause(cause);
+		        }
 		    }
 		}
 
 		return resultSet;
 	}
+	
+	/**
+	 * results without waiting, used to encode the request
+	 * @return
+	 */
+	public HSResult[] getResults() {
+	    return resultSet;
+	}
+	
+	/**
+	 * fail all results which are not received,
+	 * including the one being decoded,
+	 * for example when the request can't be encoded or written
+	 * @param cause
+	 * @return
+	 *  false if it has been finished before
+	 */
+	public boolean fail(Throwable cause) {
+	    if(finished.get()) {
+	        return false;
+	    }
+	    
+	    Exception e = (cause instanceof Exception) ? (Exception)cause : new Exception(cause);
+	    for(HSResult res : openResults) {
+	        res.fail(e);
+	    }
+	    for(HSResult res : resultSet) {
+	        res.fail(e);
+	    }
+	    return finish();
+	}
 
-	public synchronized HSResult getResult() {
+	/**
+	 * results of HSOpenIndex prepended by the connection,
+	 * set in the event loop before the request is pending
+	 * @param openResults
+	 */
+	public void setOpenResults(HSResult[] openResults) {
+	    this.openResults = openResults;
+	    this.openNum = openResults.length;
+	}
+	
+	public HSResult[] getOpenResults() {
+	    return openResults;
+	}
+	
+	public HSResult getResult() {
 	    if(isReady()) {
             return null;
 	    }
 	    
-	    return resultSet[okNum++];
+	    int n = okNum++;
+	    return n < openNum ? openResults[n] : resultSet[n - openNum];
+	}
+	
+	/**
+	 * @return
+	 *  index of the first result in resultSet not received
+	 */
+	private int firstPending() {
+	    return Math.max(0, okNum - openNum);
 	}
 
+	/**
+	 * finished, failed or all results received
+	 * @return
+	 */
+	public boolean isDone() {
+	    return finished.get();
+	}
+	
+	/**
+	 * @return
+	 *  true if the deadline has passed
+	 */
+	public boolean isExpired() {
+	    return deadline > 0 && System.currentTimeMillis() >= deadline;
+	}
+	
+	public long getDeadline() {
+	    return deadline;
+	}
+	
+	/**
+	 * timer failing the request at the deadline, cancelled when finished
+	 * @param timer
+	 */
+	public void setTimer(Timeout timer) {
+	    this.timer = timer;
+	    if(finished.get()) {
+	        timer.cancel();
+	    }
+	}
+	
 	public boolean isReady() {
-		return okNum >= taskNum;
+		return okNum >= openNum + taskNum;
 	}
 	
-	public void finish() {
+	/**
+	 * wake up the waiting caller
+	 * @return
+	 *  false if it has been finished before
+	 */
+	public boolean finish() {
+	    if(!finished.compareAndSet(false, true)) {
+	        return false;
+	    }
 	    counter.countDown();
+	    Timeout t = timer;
+	    if(t != null) {
+	        t.cancel();
+	    }
+	    notifyListeners();
+	    return true;
+	}
+	
+	/**
+	 * run the listener when finished, without blocking the caller,
+	 * in the event loop, or in the caller if it has been finished
+	 * @param listener
+	 * @return
+	 */
+	public HSResultFuture addListener(HSResultListener listener) {
+	    return addListener(listener, null);
+	}
+	
+	/**
+	 * @param listener
+	 * @param executor
+	 *  run the listener in it, null to run in the event loop
+	 * @return
+	 */
+	public HSResultFuture addListener(HSResultListener listener, Executor executor) {
+	    if(listener == null) {
+	        throw new NullPointerException("listener");
+	    }
+	    
+	    synchronized(this) {
+	        if(!finished.get()) {
+	            if(listeners == null) {
+	                listeners = new ArrayList<Object>(2);
+	            }
+	            listeners.add(listener);
+	            listeners.add(executor);
+	            return this;
+	        }
+	    }
+	    
+	    notifyListener(listener, executor);
+	    return this;
+	}
+	
+	private void notifyListeners() {
+	    List<Object> list;
+	    synchronized(this) {
+	        list = listeners;
+	        listeners = null;
+	    }
+	    
+	    if(list == null) {
+	        return;
+	    }
+	    
+	    for(int i = 0; i < list.size(); i += 2) {
+	        notifyListener((HSResultListener)list.get(i), (Executor)list.get(i + 1));
+	    }
+	}
+	
+	private void notifyListener(final HSResultListener listener, Executor executor) {
+	    if(executor == null) {
+	        invokeListener(listener);
+	        return;
+	    }
+	    
+	    try {
+	        executor.execute(new Runnable() {
+	            @Override
+	            public void run() {
+	                invokeListener(listener);
+	            }
+	        });
+	    } catch(Throwable t) {
+	        LOG.warn("Fail to submit the listener of result future", t);
+	    }
+	}
+	
+	private void invokeListener(HSResultListener listener) {
+	    try {
+	        listener.operationComplete(this);
+	    } catch(Throwable t) {
+	        LOG.warn("Listener of result future throws an exception", t);
+	    }
 	}
 	
 	/**
-	 * default request timeout,
-	 * when get(), use default value
+	 * default timeout of get() for futures without deadline,
+	 * requests executed by HSManager have the deadline of the manager
 	 * @param timeout
 	 */
 	public static final void setDefaultTimeout(long timeout) {
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.result;
+
+/**
+ * Called once when a HSResultFuture is finished,
+ * all results are received or failed(the cause is set then).
+ * Run in the event loop of the connection if no executor is given,
+ * timeouts included, so it must not block, e.g. never call HSResultFuture.get() in it.
+ * It is run by the caller of addListener when already completed,
+ * or by the thread failing the request when the event loop is shut down.
+ */
+public interface HSResultListener {
+    void operationComplete(HSResultFuture future);
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.selector;
+
+import com.huodian.hs4j.netty.HSConnection;
+
+/**
+ * Selects the connection which a request is executed on.
+ * Called by many threads at the same time, so it must be thread safe.
+ * Connections not active(reconnecting) should be skipped.
+ */
+public interface ConnectionSelector {
+    /**
+     * @param connections
+     *  connections in the pool, never empty
+     * @return
+     *  one of connections
+     */
+    HSConnection select(HSConnection[] connections);
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.selector;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.huodian.hs4j.netty.HSConnection;
+
+/**
+ * Selects the active connection with the fewest requests in flight,
+ * so requests don't pile up behind a connection busy with a big scan.
+ * It scans all connections, use TwoChoicesSelector for very big pools.
+ */
+public class LeastInFlightSelector implements ConnectionSelector {
+    @Override
+    public HSConnection select(HSConnection[] connections) {
+        int len = connections.length;
+        //start from a random position, or the first one always wins when all are idle
+        int start = ThreadLocalRandom.current().nextInt(len);
+        HSConnection best = null;
+        int min = Integer.MAX_VALUE;
+        HSConnection conn;
+        int n;
+        
+        for(int i = 0; i < len && min > 0; i++) {
+            conn = connections[(start + i) % len];
+            if(!conn.isActive()) {
+                continue;
+            }
+            
+            n = conn.getInFlight();
+            if(n < min) {
+                min = n;
+                best = conn;
+            }
+        }
+        
+        if(best == null) {
+            return connections[start]; //all are down, fail fast in it
+        }
+        
+        return best;
+    }
+}
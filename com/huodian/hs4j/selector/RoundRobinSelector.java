@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.selector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.huodian.hs4j.netty.HSConnection;
+
+/**
+ * Selects connections one by one, skips those not active
+ */
+public class RoundRobinSelector implements ConnectionSelector {
+    private final AtomicInteger curConnection = new AtomicInteger(0);
+    
+    @Override
+    public HSConnection select(HSConnection[] connections) {
+        int len = connections.length;
+        //clear the sign bit, or the index is negative when it overflows
+        int cur = (curConnection.incrementAndGet() & Integer.MAX_VALUE) % len;
+        
+        for(int i = 0; i < len; i++) {
+            HSConnection conn = connections[(cur + i) % len];
+            if(conn.isActive()) {
+                return conn;
+            }
+        }
+        
+        return connections[cur]; //all are down, fail fast in it
+    }
+}
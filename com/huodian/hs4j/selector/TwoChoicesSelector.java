@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012 The HuoDian HandlerSocket Client For Java
+ *
+ * https://github.com/komelgman/Java-HandlerSocket-Connection/
+ *
+ * The Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.huodian.hs4j.selector;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.huodian.hs4j.netty.HSConnection;
+
+/**
+ * Power of two choices, picks two connections at random,
+ * and selects the one with fewer requests in flight.
+ * A connection not active is never selected if any other one is active.
+ * Nearly as good as LeastInFlightSelector, but O(1) for any pool size.
+ */
+public class TwoChoicesSelector implements ConnectionSelector {
+    @Override
+    public HSConnection select(HSConnection[] connections) {
+        int len = connections.length;
+        if(len == 1) {
+            return connections[0];
+        }
+        
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(len);
+        int second = random.nextInt(len - 1);
+        if(second >= first) {
+            second++; //never the same one
+        }
+        
+        HSConnection a = connections[first];
+        HSConnection b = connections[second];
+        if(!a.isActive()) {
+            return b.isActive() ? b : scan(connections, second);
+        }
+        if(!b.isActive()) {
+            return a;
+        }
+        return b.getInFlight() < a.getInFlight() ? b : a;
+    }
+    
+    /**
+     * both picks are not active, find an active one from start
+     * @param connections
+     * @param start
+     * @return
+     */
+    private HSConnection scan(HSConnection[] connections, int start) {
+        int len = connections.length;
+        
+        for(int i = 1; i < len; i++) {
+            HSConnection conn = connections[(start + i) % len];
+            if(conn.isActive()) {
+                return conn;
+            }
+        }
+        
+        return connections[start]; //all are down, fail fast in it
+    }
+}